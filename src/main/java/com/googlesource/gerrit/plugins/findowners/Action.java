@@ -43,7 +43,6 @@ import com.google.inject.Provider;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -96,9 +95,8 @@ class Action implements RestReadView<RevisionResource>, UiAction<RevisionResourc
     return "?";
   }
 
-  private static List<OwnerInfo> getOwners(OwnersDb db, Collection<String> files) {
-    Map<String, OwnerWeights> weights = new HashMap<>();
-    db.findOwners(files, weights, new ArrayList<>());
+  private static List<OwnerInfo> getOwners(OwnersResult ownersResult) {
+    Map<String, OwnerWeights> weights = ownersResult.ownerWeights;
     List<OwnerInfo> result = new ArrayList<>();
     Set<String> emails = new HashSet<>();
     for (String key : OwnerWeights.sortKeys(weights)) {
@@ -162,35 +160,36 @@ class Action implements RestReadView<RevisionResource>, UiAction<RevisionResourc
     ProjectState projectState =
         projectCache.get(changeData.project()).orElseThrow(illegalState(changeData.project()));
     Boolean useCache = params.nocache == null || !params.nocache;
+    boolean addDebugMsg = (params.debug != null) ? params.debug : config.getAddDebugMsg();
+    // Debug messages and phase times of this request.
+    Trace trace = addDebugMsg ? new Trace() : Trace.timesOnly();
+    Cache cache = Cache.getInstance(config, repoManager);
     OwnersDb db =
-        Cache.getInstance(config, repoManager)
-            .get(
-                useCache,
-                permissionBackend,
-                projectState,
-                accountCache,
-                emails,
-                repoManager,
-                changeData,
-                patchset);
+        cache.get(
+            useCache,
+            permissionBackend,
+            projectState,
+            accountCache,
+            emails,
+            repoManager,
+            changeData,
+            trace);
     Collection<String> changedFiles = changeData.currentFilePaths();
-    Map<String, Set<String>> file2Owners = db.findOwners(changedFiles);
+    OwnersResult ownersResult = db.findOwners(changedFiles, trace);
+    cache.getMetrics().record(trace);
 
-    boolean addDebugMsg = (params.debug != null) ? params.debug : config.getAddDebugMsg();
     RestResult obj = new RestResult(config, projectState, changeData, addDebugMsg);
     obj.patchset = patchset;
     obj.ownerRevision = db.revision;
     if (addDebugMsg) {
       obj.dbgmsgs.user = getUserName();
-      obj.dbgmsgs.errors = db.errors;
-      obj.dbgmsgs.path2owners = Util.makeSortedMap(db.path2Owners);
-      obj.dbgmsgs.owner2paths = Util.makeSortedMap(db.owner2Paths);
-      obj.dbgmsgs.logs = db.logs;
+      db.copyDebugMsgs(obj.dbgmsgs, trace);
+      obj.dbgmsgs.timing = new RestResult.Timing(trace);
     }
 
-    obj.file2owners = Util.makeSortedMap(file2Owners);
+    obj.file2owners = Util.makeSortedMap(ownersResult.file2Owners);
     obj.reviewers = getReviewers(changeData, accountCache);
-    obj.owners = getOwners(db, changedFiles);
+    obj.owners = getOwners(ownersResult);
     obj.files = new ArrayList<>(changedFiles);
     return Response.ok(obj);
   }
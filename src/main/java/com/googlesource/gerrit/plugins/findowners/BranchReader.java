@@ -0,0 +1,144 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Reads files of one project at one commit, e.g. a branch snapshot of an OwnersDb.
+ *
+ * <p>All OWNERS and included files read while building an OwnersDb share one ObjectReader, so they
+ * share its decoded objects and pack windows. The root tree is parsed once, and the tree id of
+ * every directory looked up is kept, so a file is found by walking only its parent tree.
+ */
+class BranchReader implements AutoCloseable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  final String project;
+  private final ObjectId commitId;
+  private final ObjectReader reader;
+  private final RevWalk revWalk;
+  private RevTree rootTree; // parsed when first used
+  // Git path of a directory, "" for the root, to its tree id, or null if not found.
+  private final Map<String, ObjectId> trees = new HashMap<>();
+
+  BranchReader(Repository repo, String project, ObjectId commitId) {
+    this.project = project;
+    this.commitId = commitId;
+    this.reader = repo.newObjectReader();
+    this.revWalk = new RevWalk(reader);
+  }
+
+  ObjectReader getObjectReader() {
+    return reader;
+  }
+
+  RevTree getRootTree() throws IOException {
+    if (rootTree == null) {
+      rootTree = revWalk.parseCommit(commitId).getTree();
+    }
+    return rootTree;
+  }
+
+  /** Saves the tree id of a directory found by another walk of the root tree. */
+  void putTree(String dir, ObjectId treeId) {
+    trees.putIfAbsent(dir, treeId.copy());
+  }
+
+  /** Returns the tree id of a directory, e.g. "d1/d2", or null if not found. */
+  private ObjectId findTree(String dir) throws IOException {
+    if (dir.isEmpty()) {
+      return getRootTree();
+    }
+    if (trees.containsKey(dir)) {
+      return trees.get(dir);
+    }
+    int slash = dir.lastIndexOf('/');
+    ObjectId parent = findTree((slash < 0) ? "" : dir.substring(0, slash));
+    ObjectId id = (parent == null) ? null : findEntry(parent, dir.substring(slash + 1), true);
+    trees.put(dir, id);
+    return id;
+  }
+
+  /** Returns the id of a tree or non-tree entry name in tree parent, or null if not found. */
+  private ObjectId findEntry(ObjectId parent, String name, boolean isTree) throws IOException {
+    try (TreeWalk treeWalk = TreeWalk.forPath(reader, name, parent)) {
+      return (treeWalk == null || treeWalk.isSubtree() != isTree) ? null : treeWalk.getObjectId(0);
+    }
+  }
+
+  /** Returns the blob id of a file, e.g. "d1/OWNERS", or null if not found. */
+  ObjectId findFile(String file) throws IOException {
+    int slash = file.lastIndexOf('/');
+    ObjectId tree = findTree((slash < 0) ? "" : file.substring(0, slash));
+    return (tree == null) ? null : findEntry(tree, file.substring(slash + 1), false);
+  }
+
+  /** Returns file content or empty string. */
+  String readFile(String file, Trace trace) {
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.FILE_READ);
+    try {
+      ObjectId id = findFile(file);
+      if (id != null) {
+        return readBlob(id, file, trace);
+      }
+      trace.log("getFile:", file, " (NOT FOUND)");
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("get file %s", file);
+      OwnersDb.logException(trace, "getFile", e);
+    } finally {
+      timer.stop();
+    }
+    return "";
+  }
+
+  /** Returns content of a blob of file, or empty string. */
+  String readFile(ObjectId blobId, String file, Trace trace) {
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.FILE_READ);
+    try {
+      return readBlob(blobId, file, trace);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("get file %s", file);
+      OwnersDb.logException(trace, "getFile", e);
+    } finally {
+      timer.stop();
+    }
+    return "";
+  }
+
+  private String readBlob(ObjectId blobId, String file, Trace trace) throws IOException {
+    byte[] bytes = reader.open(blobId).getBytes();
+    trace.add(Trace.Counter.BYTES_READ, bytes.length);
+    trace.log("getFile:", file, ":(...)");
+    return new String(bytes, UTF_8);
+  }
+
+  @Override
+  public void close() {
+    revWalk.close();
+    reader.close();
+  }
+}
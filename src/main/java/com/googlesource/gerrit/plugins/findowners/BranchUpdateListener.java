@@ -0,0 +1,54 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jgit.lib.ObjectId;
+
+/** Removes cached OwnersDb that are outdated by a branch update. */
+@Singleton
+class BranchUpdateListener implements GitReferenceUpdatedListener {
+  private final PluginConfigFactory configFactory;
+  private final GitRepositoryManager repoManager;
+
+  @Inject
+  BranchUpdateListener(PluginConfigFactory configFactory, GitRepositoryManager repoManager) {
+    this.configFactory = configFactory;
+    this.repoManager = repoManager;
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    String refName = event.getRefName();
+    if (!refName.startsWith("refs/heads/")) {
+      return; // changes and meta data do not affect OWNERS files
+    }
+    Cache.getInstance(new Config(configFactory, null), repoManager)
+        .onBranchUpdated(
+            repoManager,
+            event.getProjectName(),
+            refName,
+            toObjectId(event.isCreate() ? null : event.getOldObjectId()),
+            toObjectId(event.isDelete() ? null : event.getNewObjectId()));
+  }
+
+  private static ObjectId toObjectId(String id) {
+    return id == null ? null : ObjectId.fromString(id);
+  }
+}
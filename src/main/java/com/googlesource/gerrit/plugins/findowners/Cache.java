@@ -14,8 +14,13 @@
 
 package com.googlesource.gerrit.plugins.findowners;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.account.Emails;
 import com.google.gerrit.server.git.GitRepositoryManager;
@@ -26,10 +31,14 @@ import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 
 /** Save OwnersDb in a cache for multiple calls to submit_filter. */
 class Cache {
@@ -37,13 +46,15 @@ class Cache {
 
   // The OwnersDb is created from OWNERS files in directories that
   // contain changed files of a patch set, which belongs to a project
-  // and branch. OwnersDb can be cached if the head of a project branch
-  // and the patch set are not changed.
+  // and branch. All OWNERS files are read from the head of the branch,
+  // so the same OwnersDb can be shared by all changes of a branch snapshot,
+  // i.e. the same project, branch revision, and OWNERS file name.
+  // A cached OwnersDb reads OWNERS files of new directories on demand,
+  // when a change has files in directories not read by earlier changes.
 
-  // Although the head of a project branch could be changed by other users,
-  // it is better to assume the same for a patch set during a short period
-  // of time. So multiple checks would have the same result. For example,
-  // one client UI action can trigger multiple HTTP requests.
+  // When the head of a project branch is changed, a new OwnersDb is
+  // created with a new key, and the old one stays in the cache until it
+  // expires. One client UI action can trigger multiple HTTP requests.
   // Each HTTP request has one StoredValues,
   // and can trigger multiple Prolog submit_filter.
   // Each submit_filter has one Prolog engine.
@@ -59,11 +70,72 @@ class Cache {
   // dbCache key is generated by makeKey.
   private com.google.common.cache.Cache<String, OwnersDb> dbCache;
 
+  // OwnersDb removed from dbCache by a branch update, with key generated by makeBranchKey.
+  // The next new OwnersDb of the same project branch takes it out of branchCache, and copies
+  // unchanged OWNERS data from it. So each OwnersDb is in at most one of the two caches.
+  private com.google.common.cache.Cache<String, OwnersDb> branchCache;
+
+  // Parsed OWNERS files, with key generated by makeParsedKey from the file blob id.
+  // A parsed file without include or file: statement depends only on its content and path,
+  // so it can be shared by all OwnersDb of all branches and projects.
+  // It can be saved to a persistent directory to avoid parsing all files again after a restart.
+  private ParsedCache parsedCache;
+
   private Config config; // global config shared by all OwnersDb in dbCache
 
+  // Background threads to refresh old OwnersDb, or null if there is none.
+  private volatile OwnersPrecomputer precomputer;
+
+  // Reported plugin metrics, or null if the plugin Module is not loaded.
+  private volatile Metrics metrics;
+
+  // branchCache gets 1/BRANCH_CACHE_DIVISOR of maxCacheSize or maxCacheMemory,
+  // and dbCache gets the rest.
+  private static final int BRANCH_CACHE_DIVISOR = 4;
+
+  // When dbCache is limited by maxCacheMemory, a cached OwnersDb that has grown this many times
+  // since it was weighed is replaced by a copy, which is weighed with its current size.
+  private static final int REWEIGH_GROWTH = 2;
+  private boolean weighed; // dbCache and branchCache are limited by weight
+
+  // Time source of OwnersDb ages; tests replace it to age cached OwnersDb without waiting.
+  private Ticker ticker = Ticker.systemTicker();
+
+  // Keys of OwnersDb being refreshed in background.
+  private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
   private Cache(Config config) {
     this.config = config;
-    init(config.getMaxCacheAge(), config.getMaxCacheSize());
+    init(config.getMaxCacheAge(), config.getMaxCacheSize(), config.getMaxCacheMemory());
+  }
+
+  void setPrecomputer(OwnersPrecomputer precomputer) {
+    this.precomputer = precomputer;
+  }
+
+  void setTicker(Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /** Returns the reported metrics, or Metrics.DISABLED. */
+  Metrics getMetrics() {
+    Metrics reported = metrics;
+    return (reported == null) ? Metrics.DISABLED : reported;
+  }
+
+  /** Returns statistics of dbCache, or all zero if OwnersDb is not cached. */
+  CacheStats stats() {
+    com.google.common.cache.Cache<String, OwnersDb> cache = dbCache;
+    return (cache == null) ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+  }
+
+  /** Returns the cached OwnersDb of key, or null. */
+  OwnersDb getIfPresent(String key) {
+    return (dbCache == null) ? null : dbCache.getIfPresent(key);
   }
 
   long size() {
@@ -71,27 +143,125 @@ class Cache {
   }
 
   Cache init(int maxSeconds, int maxSize) {
+    return init(maxSeconds, maxSize, 0);
+  }
+
+  /** Initializes the cache; a positive maxMegabytes limits estimated size instead of count. */
+  Cache init(int maxSeconds, int maxSize, int maxMegabytes) {
     // This should be called once in normal configuration,
     // but could be called multiple times in unit or integration tests.
     if (dbCache != null) {
       dbCache.invalidateAll(); // release all cached objects
+      branchCache.invalidateAll();
+      parsedCache.invalidateAll();
+      parsedCache.close();
     }
     if (maxSeconds > 0) {
-      logger.atInfo().log("Initialize Cache with maxSeconds=%d maxSize=%d", maxSeconds, maxSize);
-      dbCache =
-          CacheBuilder.newBuilder()
-              .maximumSize(maxSize)
-              .expireAfterWrite(Duration.ofSeconds(maxSeconds))
-              .recordStats()
-              .build();
+      logger.atInfo().log(
+          "Initialize Cache with maxSeconds=%d maxSize=%d maxMegabytes=%d",
+          maxSeconds, maxSize, maxMegabytes);
+      weighed = maxMegabytes > 0;
+      int branchSize = maxSize / BRANCH_CACHE_DIVISOR;
+      long maxBytes = maxMegabytes * 1024L * 1024L;
+      long branchBytes = maxBytes / BRANCH_CACHE_DIVISOR;
+      dbCache = newDbCache(maxSeconds, maxSize - branchSize, maxBytes - branchBytes, true);
+      branchCache = newDbCache(maxSeconds, branchSize, branchBytes, false);
+      parsedCache =
+          new ParsedCache(
+              config.getMaxParsedCacheSize(),
+              config.getPersistentCacheDir(),
+              config.getMaxPersistentCacheSize());
     } else {
       logger.atInfo().log("Cache disabled.");
       dbCache = null;
+      branchCache = null;
+      parsedCache = null;
     }
     return this;
   }
 
-  /** Returns a cached or new OwnersDb, for the current patchset. */
+  private static com.google.common.cache.Cache<String, OwnersDb> newDbCache(
+      int maxSeconds, int maxSize, long maxBytes, boolean recordStats) {
+    CacheBuilder<Object, Object> builder =
+        CacheBuilder.newBuilder().expireAfterWrite(Duration.ofSeconds(maxSeconds));
+    if (recordStats) {
+      builder.recordStats();
+    }
+    if (maxBytes <= 0) {
+      return builder.maximumSize(maxSize).build();
+    }
+    // A large OwnersDb can be much larger than a small one, so the total estimated size
+    // is limited instead of the number of OwnersDb. An OwnersDb is weighed when it is added,
+    // after its first files are loaded.
+    return builder.maximumWeight(maxBytes).weigher((String key, OwnersDb db) -> weigh(db)).build();
+  }
+
+  private static int weigh(OwnersDb db) {
+    long size = db.estimateSize();
+    db.weighedSize = size;
+    return (int) Math.min(Integer.MAX_VALUE, size);
+  }
+
+  /**
+   * Starts a background rebuild of db if it has grown much since it was weighed, by loadOwnersFiles
+   * of changes with files in new directories. A cache weighs an OwnersDb only when it is added, and
+   * callers keep getting db until the rebuild is done. Without background tasks, db is added again
+   * to be weighed again.
+   */
+  private void rebuildIfGrown(
+      OwnersDb db, Function<Trace, OwnersDb> newSharedDb, ChangeData changeData) {
+    com.google.common.cache.Cache<String, OwnersDb> cache = dbCache;
+    if (!weighed || cache == null || db.weighedSize <= 0) {
+      return; // not weighed by the current caches
+    }
+    long size = db.estimateSize();
+    if (size <= REWEIGH_GROWTH * db.weighedSize || !refreshingKeys.add(db.key)) {
+      return;
+    }
+    logger.atFiner().log(
+        "Copy grown OwnersDb, key=%s, size=%d, old size=%d", db.key, size, db.weighedSize);
+    OwnersPrecomputer background = precomputer;
+    Runnable copy =
+        () -> {
+          try {
+            rebuild(db, newSharedDb, cache);
+          } finally {
+            refreshingKeys.remove(db.key);
+          }
+        };
+    if (background == null || !background.execute(changeData.change().getOwner(), copy)) {
+      try {
+        // Replacing db with itself only weighs it again, without the cost of a copy.
+        cache.asMap().replace(db.key, db, db);
+      } finally {
+        refreshingKeys.remove(db.key);
+      }
+    }
+  }
+
+  /** Replaces db in cache with a new OwnersDb of the same key, which copies parsed files of db. */
+  private void rebuild(
+      OwnersDb db,
+      Function<Trace, OwnersDb> newSharedDb,
+      com.google.common.cache.Cache<String, OwnersDb> cache) {
+    try {
+      // The new OwnersDb copies all parsed OWNERS files of the same revision,
+      // and looks up owner accounts and files included from other projects again.
+      Trace trace = Trace.timesOnly();
+      OwnersDb newDb = newSharedDb.apply(trace);
+      newDb.copyUnchangedFrom(db, trace);
+      getMetrics().record(trace);
+      // Do not add it back if db was removed by a branch update or Cache.init.
+      cache.asMap().replace(db.key, db, newDb);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Fail to rebuild OwnersDb, key=%s", db.key);
+    }
+  }
+
+  /**
+   * Returns a cached or new OwnersDb of the branch snapshot of a change, which has read OWNERS
+   * files of the files in the current patchset.
+   */
   OwnersDb get(
       Boolean useCache,
       PermissionBackend permissionBackend,
@@ -108,10 +278,15 @@ class Cache {
         emails,
         repoManager,
         changeData,
-        changeData.currentPatchSet().id().get());
+        Trace.NONE);
   }
 
-  /** Returns a cached or new OwnersDb, for the specified patchset. */
+  /**
+   * Returns a cached or new OwnersDb of the branch snapshot of a change, which has read OWNERS
+   * files of the files in the current patchset. The OwnersDb does not depend on the patchset, so it
+   * is also used for older patchsets. When trace is enabled, debug messages of building and using
+   * the OwnersDb are added to trace.
+   */
   OwnersDb get(
       Boolean useCache,
       PermissionBackend permissionBackend,
@@ -120,21 +295,37 @@ class Cache {
       Emails emails,
       GitRepositoryManager repoManager,
       ChangeData changeData,
-      int patchset) {
+      Trace trace) {
     String branch = changeData.change().getDest().branch();
-    String dbKey = Cache.makeKey(changeData.getId().get(), patchset, repoManager);
-    // TODO: get changed files of the given patchset?
-    return get(
-        useCache,
-        permissionBackend,
-        projectState,
-        accountCache,
-        emails,
-        dbKey,
-        repoManager,
+    Collection<String> files = changeData.currentFilePaths();
+    long start = System.nanoTime();
+    OwnersDb db;
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.CACHE_LOOKUP);
+    try {
+      db =
+          get(
+              useCache,
+              permissionBackend,
+              projectState,
+              accountCache,
+              emails,
+              repoManager,
+              changeData,
+              branch,
+              files,
+              trace);
+    } finally {
+      timer.stop();
+    }
+    SlowLog.logIfSlow(
+        config,
+        SlowLog.BUILD,
+        config.getSlowBuildThreshold(),
+        System.nanoTime() - start,
         changeData,
-        branch,
-        changeData.currentFilePaths());
+        files.size(),
+        trace);
+    return db;
   }
 
   /** Returns a cached or new OwnersDb, for the specified branch and changed files. */
@@ -144,68 +335,219 @@ class Cache {
       ProjectState projectState,
       AccountCache accountCache,
       Emails emails,
-      String key,
       GitRepositoryManager repoManager,
       ChangeData changeData,
       String branch,
-      Collection<String> files) {
-    if (dbCache == null || !useCache) { // Do not cache OwnersDb
-      logger.atFiner().log("Create new OwnersDb, key=%s", key);
-      return new OwnersDb(
-          permissionBackend,
-          projectState,
-          accountCache,
-          emails,
-          key,
-          repoManager,
-          config,
-          changeData,
-          branch,
-          files);
-    }
+      Collection<String> files,
+      Trace trace) {
+    String ownersFileName = config.getOwnersFileName(projectState, changeData);
+    ObjectId branchId =
+        OwnersDb.getBranchId(repoManager, projectState.getNameKey(), branch, changeData, trace);
+    String key = makeKey(projectState.getName(), branch, branchId, ownersFileName);
+    BiFunction<PermissionBackend, Trace, OwnersDb> newOwnersDb =
+        (PermissionBackend backend, Trace t) -> {
+          logger.atFiner().log("Create new OwnersDb, key=%s", key);
+          return new OwnersDb(
+              backend,
+              projectState,
+              accountCache,
+              emails,
+              key,
+              repoManager,
+              config,
+              changeData,
+              branch,
+              branchId,
+              ownersFileName,
+              useCache ? parsedCache : null,
+              t);
+        };
+    String branchKey = makeBranchKey(projectState.getName(), branch, ownersFileName);
+    // A cached OwnersDb is shared by all users, so whoever builds it first must not change
+    // what it reads. Like the submit rule, it reads files without permission checks,
+    // and each caller's read access to all of its files is checked once by canRead.
+    Function<Trace, OwnersDb> newSharedDb =
+        (Trace t) -> {
+          OwnersDb newDb = newOwnersDb.apply(null, t);
+          newDb.branchKey = branchKey;
+          newDb.createTime = ticker.read();
+          return newDb;
+        };
+    // A cached OwnersDb does not keep debug messages.
+    OwnersDb db;
+    boolean cached = false; // db is in dbCache
+    Trace loadTrace = trace; // to load files of the change into db
+    // Debug messages of a shared OwnersDb, added to trace only if the caller can read its files.
+    Trace sharedTrace = null;
     try {
-      logger.atFiner().log(
-          "Get from cache %s, key=%s, cache size=%d", dbCache, key, dbCache.size());
-      logger.atFine().atMostEvery(30, TimeUnit.SECONDS).log(
-          "FindOwnersCacheStats: %s", dbCache.stats());
-      return dbCache.get(
-          key,
-          new Callable<OwnersDb>() {
-            @Override
-            public OwnersDb call() {
-              logger.atFiner().log("Create new OwnersDb, key=%s", key);
-              return new OwnersDb(
-                  permissionBackend,
-                  projectState,
-                  accountCache,
-                  emails,
-                  key,
-                  repoManager,
-                  config,
-                  changeData,
-                  branch,
-                  files);
-            }
-          });
-    } catch (ExecutionException e) {
+      if (dbCache == null || !useCache) { // Do not cache OwnersDb
+        db = newOwnersDb.apply(permissionBackend, trace);
+      } else {
+        logger.atFiner().log(
+            "Get from cache %s, key=%s, cache size=%d", dbCache, key, dbCache.size());
+        logger.atFine().atMostEvery(30, TimeUnit.SECONDS).log(
+            "FindOwnersCacheStats: %s, parsed files: %s", dbCache.stats(), parsedCache.stats());
+        cached = true;
+        Trace buildTrace = trace.withNewLogs();
+        sharedTrace = buildTrace;
+        loadTrace = buildTrace;
+        boolean[] created = {false};
+        db =
+            dbCache.get(
+                key,
+                () -> {
+                  OwnersDb newDb = newSharedDb.apply(buildTrace);
+                  OwnersDb previous = branchCache.asMap().remove(branchKey);
+                  if (previous != null) {
+                    newDb.copyUnchangedFrom(previous, buildTrace);
+                  }
+                  // Files of the change are loaded before dbCache weighs the new OwnersDb.
+                  newDb.loadOwnersFiles(files, buildTrace);
+                  created[0] = true;
+                  return newDb;
+                });
+        refreshIfOld(db, newSharedDb, changeData);
+        if (!created[0]) {
+          trace.setFromCache();
+        }
+        if (trace.isEnabled() && !created[0]) {
+          // Debug messages of the cached OwnersDb were not kept, so they are regenerated by
+          // a new OwnersDb, which reads the same OWNERS files and uses the same parsed files.
+          // Times and counts of the trace are of the cached OwnersDb, as without debug messages.
+          db.loadOwnersFiles(files, trace.withoutLogs());
+          rebuildIfGrown(db, newSharedDb, changeData);
+          cached = false;
+          loadTrace = buildTrace.withoutTimes();
+          db = newSharedDb.apply(loadTrace);
+        }
+      }
+    } catch (Exception e) {
       logger.atSevere().withCause(e).log(
           "Cache.get has exception for %s", Config.getChangeId(changeData));
-      return new OwnersDb(
-          permissionBackend,
-          projectState,
-          accountCache,
-          emails,
-          key,
-          repoManager,
-          config,
-          changeData,
-          branch,
-          files);
-    }
-  }
-
-  public static String makeKey(int change, int patch, GitRepositoryManager repoManager) {
-    return String.format("%d:%d:%H", change, patch, repoManager);
+      cached = false;
+      sharedTrace = null;
+      loadTrace = trace;
+      db =
+          new OwnersDb(
+              permissionBackend,
+              projectState,
+              accountCache,
+              emails,
+              key,
+              repoManager,
+              config,
+              changeData,
+              branch,
+              branchId,
+              ownersFileName,
+              null,
+              trace);
+    }
+    // Only OWNERS files in directories not read before are read here.
+    db.loadOwnersFiles(files, loadTrace);
+    if (cached) {
+      rebuildIfGrown(db, newSharedDb, changeData);
+    }
+    if (sharedTrace != null) {
+      if (db.canRead(permissionBackend)) {
+        trace.addLogs(sharedTrace);
+      } else {
+        // Read files again with the caller's permissions, as without a cache.
+        logger.atFiner().log("Create unshared OwnersDb for a user who cannot read key=%s", key);
+        db = newOwnersDb.apply(permissionBackend, trace);
+        db.loadOwnersFiles(files, trace);
+      }
+    }
+    return db;
+  }
+
+  /**
+   * Starts a background rebuild of db if it is older than cacheRefreshAge. Until the rebuild is
+   * done, callers keep getting the old db, instead of waiting for a new one after it expires.
+   */
+  private void refreshIfOld(
+      OwnersDb db, Function<Trace, OwnersDb> newOwnersDb, ChangeData changeData) {
+    long refreshAge = TimeUnit.SECONDS.toNanos(config.getCacheRefreshAge());
+    OwnersPrecomputer background = precomputer;
+    if (refreshAge <= 0
+        || background == null
+        || ticker.read() - db.createTime < refreshAge
+        || !refreshingKeys.add(db.key)) {
+      return;
+    }
+    com.google.common.cache.Cache<String, OwnersDb> oldDbCache = dbCache;
+    Runnable refresh =
+        () -> {
+          try {
+            logger.atFiner().log("Refresh OwnersDb, key=%s", db.key);
+            rebuild(db, newOwnersDb, oldDbCache);
+          } finally {
+            refreshingKeys.remove(db.key);
+          }
+        };
+    // The new OwnersDb reads files without permission checks, as any shared OwnersDb.
+    if (!background.execute(changeData.change().getOwner(), refresh)) {
+      refreshingKeys.remove(db.key);
+    }
+  }
+
+  /** Returns a key of the branch snapshot, shared by all changes of the same branch revision. */
+  public static String makeKey(
+      String project, String branch, ObjectId branchId, String ownersFileName) {
+    // Branch name is part of the key, because included files of other projects
+    // are read from the branch of the same name.
+    String revision = (branchId == null) ? "" : branchId.getName();
+    return String.join(":", project, branch, revision, ownersFileName);
+  }
+
+  /**
+   * Removes cached OwnersDb that are outdated by an update of a project branch. They are OwnersDb
+   * of older revisions of the branch, and OwnersDb of other projects that include changed files of
+   * the branch. So cached owners info is updated right after a change of OWNERS files is merged.
+   */
+  void onBranchUpdated(
+      GitRepositoryManager repoManager,
+      String project,
+      String branch,
+      ObjectId oldId,
+      ObjectId newId) {
+    if (dbCache == null) {
+      return;
+    }
+    Supplier<Set<String>> changedFiles =
+        Suppliers.memoize(() -> getChangedFiles(repoManager, project, oldId, newId));
+    for (OwnersDb db : dbCache.asMap().values()) {
+      if (db.isOutdatedBy(project, branch, newId, changedFiles)) {
+        logger.atFiner().log("Remove outdated OwnersDb, key=%s", db.key);
+        dbCache.invalidate(db.key);
+        // Keep it until the next OwnersDb of its branch copies unchanged OWNERS data from it.
+        branchCache.put(db.branchKey, db);
+      }
+    }
+  }
+
+  /** Returns changed files between two revisions, or null if unknown. */
+  private static Set<String> getChangedFiles(
+      GitRepositoryManager repoManager, String project, ObjectId oldId, ObjectId newId) {
+    if (oldId == null || newId == null) {
+      return null; // created or deleted branch
+    }
+    try (Repository repo = repoManager.openRepository(Project.nameKey(project))) {
+      return OwnersDb.getChangedFiles(repo, oldId, newId);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Fail to get changed files of project %s", project);
+      return null;
+    }
+  }
+
+  /** Returns a key of a parsed OWNERS file, shared by all files of the same content and path. */
+  static String makeParsedKey(ObjectId blobId, String filePath) {
+    return blobId.getName() + ":" + filePath;
+  }
+
+  /** Returns a key of the project branch, shared by all revisions of the branch. */
+  static String makeBranchKey(String project, String branch, String ownersFileName) {
+    return String.join(":", project, branch, ownersFileName);
   }
 
   public static Cache getInstance(Config config, GitRepositoryManager repoManager) {
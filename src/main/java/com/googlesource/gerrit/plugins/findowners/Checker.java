@@ -114,12 +114,17 @@ public class Checker {
 
   /** Returns 1 if owner approval is found, -1 if missing, 0 if unneeded. */
   int findApproval(OwnersDb db) {
-    Map<String, Set<String>> file2Owners = db.findOwners(changeData.currentFilePaths());
-    if (file2Owners.isEmpty()) { // do not need owner approval
+    return findApproval(db, Trace.NONE);
+  }
+
+  /** Returns 1 if owner approval is found, -1 if missing, 0 if unneeded. */
+  int findApproval(OwnersDb db, Trace trace) {
+    OwnersResult ownersResult = db.findOwners(changeData.currentFilePaths(), trace);
+    if (ownersResult.getNumOwners() == 0) { // do not need owner approval
       return 0;
     }
     Map<String, Integer> votes = getVotes(changeData);
-    for (Set<String> owners : file2Owners.values()) {
+    for (Set<String> owners : ownersResult.file2Owners.values()) {
       if (!findOwnersInVotes(owners, votes)) {
         return -1;
       }
@@ -153,26 +158,37 @@ public class Checker {
     if (isExemptFromOwnerApproval(changeData)) {
       return 0;
     }
+    long start = System.nanoTime();
+    Trace trace = Trace.timesOnly(); // phase times for metrics
     // One update to a Gerrit change can call submit_rule or submit_filter
     // many times. So this function should use cached values.
+    Cache cache = Cache.getInstance(config, repoManager);
     OwnersDb db =
-        Cache.getInstance(config, repoManager)
-            .get(
-                true,
-                null, /* allow submit checker to read all OWNERS files */
-                projectState,
-                accountCache,
-                emails,
-                repoManager,
-                changeData);
-    if (db.getNumOwners() <= 0) {
-      return 0;
-    }
+        cache.get(
+            true,
+            null, /* allow submit checker to read all OWNERS files */
+            projectState,
+            accountCache,
+            emails,
+            repoManager,
+            changeData,
+            trace);
     if (minVoteLevel <= 0) {
       minVoteLevel = config.getMinOwnerVoteLevel(projectState, changeData);
     }
     logger.atFiner().log("findApproval db key = %s", db.key);
-    return findApproval(db);
+    int result = findApproval(db, trace);
+    long nanos = System.nanoTime() - start;
+    cache.getMetrics().recordSubmitRule(trace, nanos);
+    SlowLog.logIfSlow(
+        config,
+        SlowLog.APPROVAL,
+        config.getSlowApprovalThreshold(),
+        nanos,
+        changeData,
+        changeData.currentFilePaths().size(),
+        trace);
+    return result;
   }
 
   /** Returns true if exempt from owner approval. */
@@ -29,7 +29,17 @@ class Config {
   // Name of config parameters that should be defined in gerrit.config:
   static final String ADD_DEBUG_MSG = "addDebugMsg"; // include "dbgmsgs" in returned JSON object
   static final String MAX_CACHE_AGE = "maxCacheAge"; // seconds to stay in cache
+  static final String CACHE_REFRESH_AGE = "cacheRefreshAge"; // seconds to refresh in background
   static final String MAX_CACHE_SIZE = "maxCacheSize"; // number of OwnersDb in cache
+  static final String MAX_CACHE_MEMORY = "maxCacheMemory"; // megabytes of OwnersDb in cache
+  static final String MAX_PARSED_CACHE_SIZE = "maxParsedCacheSize"; // number of parsed files
+  static final String PERSISTENT_CACHE_DIR = "persistentCacheDir"; // to save parsed files
+  static final String MAX_PERSISTENT_CACHE_SIZE = "maxPersistentCacheSize"; // number of saved files
+  static final String PRECOMPUTE_THREADS = "precomputeThreads"; // 0 to disable precomputation
+  static final String PRECOMPUTE_QUEUE_SIZE = "precomputeQueueSize"; // pending new patchsets
+  static final String SLOW_BUILD_THRESHOLD = "slowBuildThreshold"; // milliseconds to log
+  static final String SLOW_APPROVAL_THRESHOLD = "slowApprovalThreshold"; // milliseconds to log
+  static final String SLOW_LOG_INTERVAL = "slowLogInterval"; // seconds between slow logs
   static final String MIN_OWNER_VOTE_LEVEL = "minOwnerVoteLevel"; // default +1
   static final String REPORT_SYNTAX_ERROR = "reportSyntaxError"; // only for tests
   // "alwaysShowButton" is obsolete, new UI design always shows the [Find Owners] button
@@ -56,7 +66,17 @@ class Config {
   private boolean addDebugMsg = false;
   private int minOwnerVoteLevel = 1;
   private int maxCacheAge = 0;
+  private int cacheRefreshAge = 0;
   private int maxCacheSize = 1000;
+  private int maxCacheMemory = 0;
+  private int maxParsedCacheSize = 10000;
+  private String persistentCacheDir = "";
+  private int maxPersistentCacheSize = 100000;
+  private int precomputeThreads = 1;
+  private int precomputeQueueSize = 100;
+  private int slowBuildThreshold = 5000;
+  private int slowApprovalThreshold = 5000;
+  private int slowLogInterval = 60;
   private boolean reportSyntaxError = false;
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
@@ -81,7 +101,17 @@ class Config {
     addDebugMsg = gerritConfig.getBoolean(ADD_DEBUG_MSG, false);
     minOwnerVoteLevel = gerritConfig.getInt(MIN_OWNER_VOTE_LEVEL, 1);
     maxCacheAge = gerritConfig.getInt(MAX_CACHE_AGE, 0);
+    cacheRefreshAge = gerritConfig.getInt(CACHE_REFRESH_AGE, 0);
     maxCacheSize = gerritConfig.getInt(MAX_CACHE_SIZE, 1000);
+    maxCacheMemory = gerritConfig.getInt(MAX_CACHE_MEMORY, 0);
+    maxParsedCacheSize = gerritConfig.getInt(MAX_PARSED_CACHE_SIZE, 10000);
+    persistentCacheDir = gerritConfig.getString(PERSISTENT_CACHE_DIR, "");
+    maxPersistentCacheSize = gerritConfig.getInt(MAX_PERSISTENT_CACHE_SIZE, 100000);
+    precomputeThreads = gerritConfig.getInt(PRECOMPUTE_THREADS, 1);
+    precomputeQueueSize = gerritConfig.getInt(PRECOMPUTE_QUEUE_SIZE, 100);
+    slowBuildThreshold = gerritConfig.getInt(SLOW_BUILD_THRESHOLD, 5000);
+    slowApprovalThreshold = gerritConfig.getInt(SLOW_APPROVAL_THRESHOLD, 5000);
+    slowLogInterval = gerritConfig.getInt(SLOW_LOG_INTERVAL, 60);
     reportSyntaxError = gerritConfig.getBoolean(REPORT_SYNTAX_ERROR, false);
   }
 
@@ -111,10 +141,50 @@ class Config {
     return maxCacheAge;
   }
 
+  int getCacheRefreshAge() {
+    return cacheRefreshAge;
+  }
+
   int getMaxCacheSize() {
     return maxCacheSize;
   }
 
+  int getMaxCacheMemory() {
+    return maxCacheMemory;
+  }
+
+  int getMaxParsedCacheSize() {
+    return maxParsedCacheSize;
+  }
+
+  String getPersistentCacheDir() {
+    return persistentCacheDir;
+  }
+
+  int getMaxPersistentCacheSize() {
+    return maxPersistentCacheSize;
+  }
+
+  int getPrecomputeThreads() {
+    return precomputeThreads;
+  }
+
+  int getPrecomputeQueueSize() {
+    return precomputeQueueSize;
+  }
+
+  int getSlowBuildThreshold() {
+    return slowBuildThreshold;
+  }
+
+  int getSlowApprovalThreshold() {
+    return slowApprovalThreshold;
+  }
+
+  int getSlowLogInterval() {
+    return slowLogInterval;
+  }
+
   boolean getGlobalBooleanValue(String key) {
     return gerritConfig != null && gerritConfig.getBoolean(key, false);
   }
@@ -0,0 +1,374 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled OWNERS file glob, matched directly against a CharSequence.
+ *
+ * <p>The syntax and semantics are the same as the "glob:" syntax of the default Unix FileSystem
+ * PathMatcher, which was used to match per-file globs before: '*' matches any string without '/',
+ * '**' matches any string, '?' matches one character except '/', "[..]" and "[!..]" match one
+ * character in or not in a set of characters and ranges, "{a,b}" matches one of the comma-separated
+ * sub-patterns, and '\' escapes the next character. Matching does not allocate any object.
+ */
+final class Glob {
+  // Operations of a compiled sequence.
+  private static final int LITERAL = 0; // arg is a code point
+  private static final int ANY = 1; // '?', one code point except '/'
+  private static final int STAR = 2; // '*', any code points except '/'
+  private static final int ANY_STAR = 3; // '**', any code points except line terminators
+  private static final int CLASS = 4; // arg is an index of classes
+  private static final int GROUP = 5; // arg is an index of groups
+
+  private static final int EOL = 0; // end of glob, same as the JDK glob converter
+
+  /** A sequence of operations, for the whole glob or one alternative of a group. */
+  private static final class Seq {
+    final int[] ops;
+    final int[] args;
+
+    Seq(List<int[]> list) {
+      ops = new int[list.size()];
+      args = new int[list.size()];
+      for (int i = 0; i < ops.length; i++) {
+        ops[i] = list.get(i)[0];
+        args[i] = list.get(i)[1];
+      }
+    }
+  }
+
+  /** A character class, "[..]" or "[!..]". */
+  private static final class CharClass {
+    final boolean negate;
+    final int[] low; // inclusive lower bound of each range
+    final int[] high; // inclusive upper bound of each range
+
+    CharClass(boolean negate, List<int[]> ranges) {
+      this.negate = negate;
+      low = new int[ranges.size()];
+      high = new int[ranges.size()];
+      for (int i = 0; i < low.length; i++) {
+        low[i] = ranges.get(i)[0];
+        high[i] = ranges.get(i)[1];
+      }
+    }
+
+    boolean matches(int c) {
+      if (c == '/') {
+        return false; // a class never matches the name separator
+      }
+      boolean found = false;
+      for (int i = 0; i < low.length && !found; i++) {
+        found = low[i] <= c && c <= high[i];
+      }
+      return found != negate;
+    }
+  }
+
+  private final String glob;
+  private final Seq top; // the whole glob
+  private final Seq[][] groups; // alternatives of each group
+  private final CharClass[] classes;
+  // Globs with odd character classes, which the JDK glob converter turns into regular
+  // expressions with other meanings, are matched by a JDK PathMatcher.
+  private final PathMatcher fallback;
+
+  private Glob(String glob, Seq top, Seq[][] groups, CharClass[] classes, PathMatcher fallback) {
+    this.glob = glob;
+    this.top = top;
+    this.groups = groups;
+    this.classes = classes;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public String toString() {
+    return glob;
+  }
+
+  /** Returns true if path matches this glob. */
+  boolean matches(CharSequence path) {
+    if (fallback != null) {
+      return fallback.matches(Paths.get(path.toString()));
+    }
+    int length = path.length();
+    return match(top, 0, -1, 0, path, length, null, length);
+  }
+
+  /** Returns true if dir + "/" + baseName matches this glob, without concatenating them. */
+  boolean matches(CharSequence dir, CharSequence baseName) {
+    if (fallback != null) {
+      return fallback.matches(Paths.get(dir.toString(), baseName.toString()));
+    }
+    int dirLength = dir.length();
+    return match(top, 0, -1, 0, dir, dirLength, baseName, dirLength + 1 + baseName.length());
+  }
+
+  /**
+   * Returns true if the input from pos matches seq from op i, followed by top from op next when seq
+   * is an alternative of a group. The input is a + '/' + b, or only a if b is null.
+   */
+  private boolean match(
+      Seq seq, int i, int next, int pos, CharSequence a, int aLength, CharSequence b, int length) {
+    while (true) {
+      if (i == seq.ops.length) {
+        if (seq == top) {
+          return pos == length;
+        }
+        seq = top; // end of an alternative, continue after the group
+        i = next;
+        next = -1;
+        continue;
+      }
+      int op = seq.ops[i];
+      if (op == GROUP) {
+        for (Seq alt : groups[seq.args[i]]) {
+          if (match(alt, 0, i + 1, pos, a, aLength, b, length)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      if (op == STAR || op == ANY_STAR) {
+        while (true) {
+          if (match(seq, i + 1, next, pos, a, aLength, b, length)) {
+            return true;
+          }
+          if (pos >= length) {
+            return false;
+          }
+          int c = codePointAt(a, aLength, b, length, pos);
+          if (op == STAR ? c == '/' : isLineTerminator(c)) {
+            return false;
+          }
+          pos += Character.charCount(c);
+        }
+      }
+      if (pos >= length) {
+        return false;
+      }
+      int c = codePointAt(a, aLength, b, length, pos);
+      boolean matched;
+      if (op == LITERAL) {
+        matched = c == seq.args[i];
+      } else if (op == ANY) {
+        matched = c != '/';
+      } else {
+        matched = classes[seq.args[i]].matches(c);
+      }
+      if (!matched) {
+        return false;
+      }
+      pos += Character.charCount(c);
+      i++;
+    }
+  }
+
+  private static char charAt(CharSequence a, int aLength, CharSequence b, int pos) {
+    if (pos < aLength) {
+      return a.charAt(pos);
+    }
+    return (pos == aLength) ? '/' : b.charAt(pos - aLength - 1);
+  }
+
+  private static int codePointAt(CharSequence a, int aLength, CharSequence b, int length, int pos) {
+    char c = charAt(a, aLength, b, pos);
+    if (Character.isHighSurrogate(c) && pos + 1 < length) {
+      char d = charAt(a, aLength, b, pos + 1);
+      if (Character.isLowSurrogate(d)) {
+        return Character.toCodePoint(c, d);
+      }
+    }
+    return c;
+  }
+
+  // Characters not matched by '.' in a regular expression without the DOTALL flag.
+  private static boolean isLineTerminator(int c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static PatternSyntaxException error(String message, String glob, int index) {
+    return new PatternSyntaxException(message, glob, index);
+  }
+
+  /** Compiles a glob; throws PatternSyntaxException for the same errors as the JDK converter. */
+  static Glob compile(String glob) {
+    return new Compiler(glob).compile();
+  }
+
+  /** Parses a glob like the JDK glob to regular expression converter. */
+  private static final class Compiler {
+    private final String glob;
+    private final List<Seq[]> groups = new ArrayList<>();
+    private final List<CharClass> classes = new ArrayList<>();
+    private boolean needsFallback = false;
+    private int i = 0; // index of the next char in glob
+
+    Compiler(String glob) {
+      this.glob = glob;
+    }
+
+    private int nextCodePoint() {
+      int c = glob.codePointAt(i);
+      i += Character.charCount(c);
+      return c;
+    }
+
+    private int peek() {
+      return (i < glob.length()) ? glob.codePointAt(i) : EOL;
+    }
+
+    Glob compile() {
+      List<int[]> seq = new ArrayList<>();
+      List<Seq> alts = null; // not null in a group
+      List<int[]> topSeq = seq;
+      while (i < glob.length()) {
+        int c = nextCodePoint();
+        switch (c) {
+          case '\\':
+            if (i == glob.length()) {
+              throw error("No character to escape", glob, i - 1);
+            }
+            seq.add(new int[] {LITERAL, nextCodePoint()});
+            break;
+          case '[':
+            seq.add(new int[] {CLASS, parseClass()});
+            break;
+          case '{':
+            if (alts != null) {
+              throw error("Cannot nest groups", glob, i - 1);
+            }
+            alts = new ArrayList<>();
+            seq = new ArrayList<>();
+            break;
+          case '}':
+            if (alts != null) {
+              alts.add(new Seq(seq));
+              topSeq.add(new int[] {GROUP, groups.size()});
+              groups.add(alts.toArray(new Seq[0]));
+              alts = null;
+              seq = topSeq;
+            } else {
+              seq.add(new int[] {LITERAL, c});
+            }
+            break;
+          case ',':
+            if (alts != null) {
+              alts.add(new Seq(seq));
+              seq = new ArrayList<>();
+            } else {
+              seq.add(new int[] {LITERAL, c});
+            }
+            break;
+          case '*':
+            if (peek() == '*') {
+              i++;
+              seq.add(new int[] {ANY_STAR, 0});
+            } else {
+              seq.add(new int[] {STAR, 0});
+            }
+            break;
+          case '?':
+            seq.add(new int[] {ANY, 0});
+            break;
+          default:
+            seq.add(new int[] {LITERAL, c});
+        }
+      }
+      if (alts != null) {
+        throw error("Missing '}", glob, i - 1);
+      }
+      PathMatcher fallback =
+          needsFallback ? FileSystems.getDefault().getPathMatcher("glob:" + glob) : null;
+      return new Glob(
+          glob,
+          new Seq(topSeq),
+          groups.toArray(new Seq[0][]),
+          classes.toArray(new CharClass[0]),
+          fallback);
+    }
+
+    /** Parses a class after '['; returns its index in classes. */
+    private int parseClass() {
+      List<int[]> ranges = new ArrayList<>();
+      boolean negate = false;
+      if (peek() == '^') {
+        ranges.add(new int[] {'^', '^'}); // a literal '^', not a negation
+        i++;
+      } else {
+        if (peek() == '!') {
+          negate = true;
+          i++;
+        }
+        if (peek() == '-') {
+          ranges.add(new int[] {'-', '-'}); // hyphen allowed at start
+          i++;
+        }
+      }
+      boolean hasRangeStart = false;
+      int last = 0;
+      int c = 0;
+      while (i < glob.length()) {
+        c = nextCodePoint();
+        if (c == ']') {
+          break;
+        }
+        if (c == '/') {
+          throw error("Explicit 'name separator' in class", glob, i - 1);
+        }
+        if (c == '-') {
+          if (!hasRangeStart) {
+            throw error("Invalid range", glob, i - 1);
+          }
+          c = peek();
+          if (c != EOL) {
+            i += Character.charCount(c);
+          }
+          if (c == EOL || c == ']') {
+            ranges.add(new int[] {'-', '-'}); // a trailing hyphen
+            break;
+          }
+          if (c < last) {
+            throw error("Invalid range", glob, i - 1);
+          }
+          if (c == '\\' || c == '[' || c == '&') {
+            needsFallback = true; // not escaped by the JDK converter
+          }
+          ranges.get(ranges.size() - 1)[1] = c;
+          hasRangeStart = false;
+        } else {
+          ranges.add(new int[] {c, c});
+          hasRangeStart = true;
+          last = c;
+        }
+      }
+      if (c != ']') {
+        throw error("Missing ']", glob, i - 1);
+      }
+      if (ranges.isEmpty()) {
+        needsFallback = true; // "[]" and "[!]" start a class containing ']'
+      }
+      classes.add(new CharClass(negate, ranges));
+      return classes.size() - 1;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+
+/** Per-file globs of one directory, compiled once and matched together. */
+class GlobMatcher {
+  private final String[] globs; // like "./d1/*.c"
+  private final Glob[] compiled;
+
+  GlobMatcher(Collection<String> globs) {
+    this.globs = globs.toArray(new String[0]);
+    compiled = new Glob[this.globs.length];
+    for (int i = 0; i < compiled.length; i++) {
+      compiled[i] = Glob.compile(this.globs[i]);
+    }
+  }
+
+  int size() {
+    return globs.length;
+  }
+
+  String getGlob(int i) {
+    return globs[i];
+  }
+
+  /** Returns true if the i-th glob matches the file baseName in dir. */
+  boolean matches(int i, String dir, String baseName) {
+    if (dir.isEmpty() || dir.endsWith("/") || baseName.isEmpty() || baseName.indexOf('/') >= 0) {
+      // Globs were matched against a java.nio.file.Path, which removes redundant '/'.
+      return compiled[i].matches(Paths.get(dir, baseName).toString());
+    }
+    return compiled[i].matches(dir, baseName);
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import com.google.common.cache.CacheStats;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Plugin metrics of the OwnersDb cache, and latency of each Trace.Phase and of the submit rule.
+ * Gerrit adds the "plugins/find-owners/" prefix to all names.
+ */
+@Singleton
+class Metrics implements LifecycleListener {
+  /** Metrics that are not reported, used when the plugin Module is not loaded. */
+  static final Metrics DISABLED = new Metrics(new DisabledMetricMaker(), null, null);
+
+  private final PluginConfigFactory configFactory;
+  private final GitRepositoryManager repoManager;
+  private final Map<Trace.Phase, Timer0> phaseLatency = new EnumMap<>(Trace.Phase.class);
+  private final Timer0 submitRuleLatency;
+
+  private volatile Cache cache; // reported cache, or null before start
+
+  @Inject
+  Metrics(
+      MetricMaker metricMaker,
+      PluginConfigFactory configFactory,
+      GitRepositoryManager repoManager) {
+    this.configFactory = configFactory;
+    this.repoManager = repoManager;
+    newCacheMetric(
+        metricMaker,
+        "hit_count",
+        "hits",
+        "Number of OwnersDb found in cache",
+        CacheStats::hitCount);
+    newCacheMetric(
+        metricMaker,
+        "miss_count",
+        "misses",
+        "Number of OwnersDb not found in cache",
+        CacheStats::missCount);
+    newCacheMetric(
+        metricMaker,
+        "load_count",
+        "loads",
+        "Number of OwnersDb built for cache",
+        CacheStats::loadCount);
+    newCacheMetric(
+        metricMaker,
+        "eviction_count",
+        "evictions",
+        "Number of OwnersDb evicted from cache",
+        CacheStats::evictionCount);
+    newCacheMetric(
+        metricMaker,
+        "load_time",
+        Units.MILLISECONDS,
+        "Total time to build OwnersDb for cache",
+        s -> TimeUnit.NANOSECONDS.toMillis(s.totalLoadTime()));
+    for (Trace.Phase phase : Trace.Phase.values()) {
+      String name = phase.name().toLowerCase(Locale.US);
+      phaseLatency.put(
+          phase,
+          metricMaker.newTimer(
+              "latency/" + name,
+              new Description("Time of phase " + name + " in one request")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS)));
+    }
+    submitRuleLatency =
+        metricMaker.newTimer(
+            "latency/submit_rule",
+            new Description("Time to check owner approval in the submit rule")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+  }
+
+  private void newCacheMetric(
+      MetricMaker metricMaker,
+      String name,
+      String unit,
+      String description,
+      ToLongFunction<CacheStats> value) {
+    metricMaker.newCallbackMetric(
+        "cache/" + name,
+        Long.class,
+        new Description(description).setCumulative().setUnit(unit),
+        () -> {
+          Cache reported = cache;
+          return (reported == null) ? 0L : value.applyAsLong(reported.stats());
+        });
+  }
+
+  @Override
+  public void start() {
+    cache = Cache.getInstance(new Config(configFactory, null), repoManager);
+    cache.setMetrics(this);
+  }
+
+  @Override
+  public void stop() {
+    Cache reported = cache;
+    if (reported != null) {
+      reported.setMetrics(null);
+    }
+  }
+
+  /** Records the time of each phase started by a finished request. */
+  void record(Trace trace) {
+    for (Trace.Phase phase : Trace.Phase.values()) {
+      if (trace.getCount(phase) > 0) {
+        phaseLatency.get(phase).record(trace.getNanos(phase), TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  /** Records one check of owner approval, and the phases of its trace. */
+  void recordSubmitRule(Trace trace, long nanos) {
+    record(trace);
+    submitRuleLatency.record(nanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -17,11 +17,15 @@ package com.googlesource.gerrit.plugins.findowners;
 import static com.google.gerrit.server.change.ChangeResource.CHANGE_KIND;
 import static com.google.gerrit.server.change.RevisionResource.REVISION_KIND;
 
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.events.RevisionCreatedListener;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.restapi.RestApiModule;
 import com.google.gerrit.extensions.webui.JavaScriptPlugin;
 import com.google.gerrit.extensions.webui.WebUiPlugin;
 import com.google.inject.AbstractModule;
+import com.google.inject.internal.UniqueAnnotations;
 
 /** find-owners plugin module */
 public class Module extends AbstractModule {
@@ -38,6 +42,12 @@ public class Module extends AbstractModule {
         });
     DynamicSet.bind(binder(), WebUiPlugin.class)
         .toInstance(new JavaScriptPlugin(Config.PLUGIN_NAME + ".js"));
+    DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(BranchUpdateListener.class);
+    DynamicSet.bind(binder(), RevisionCreatedListener.class).to(OwnersPrecomputer.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(OwnersPrecomputer.class);
+    bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(Metrics.class);
 
     install(new PredicateModule());
   }
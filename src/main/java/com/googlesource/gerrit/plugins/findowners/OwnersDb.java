@@ -14,8 +14,7 @@
 
 package com.googlesource.gerrit.plugins.findowners;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.flogger.FluentLogger;
@@ -30,50 +29,133 @@ import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.permissions.RefPermission;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.query.change.ChangeData;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.PathMatcher;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /** Keep all information about owners and owned files. */
 class OwnersDb {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  // "HostName:" trace message of this server, looked up only once per process and only when
+  // debug messages are requested, since InetAddress.getLocalHost could need a DNS query.
+  private static final Supplier<String> hostName =
+      Suppliers.memoize(
+          () -> {
+            try {
+              return "HostName:" + InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+              return "HostName: Exception:" + e.getMessage();
+            }
+          });
+
   private final PermissionBackend permissionBackend;
   private final AccountCache accountCache;
   private final GitRepositoryManager repoManager;
   private final Emails emails;
   private final Config config;
-  private int numOwners = -1; // # of owners of all given files.
+  private final String projectName;
+  private final String branch;
+  private final ObjectId branchId; // null if the branch is not found
+  private final String ownersFileName;
+  // Parsed OWNERS files shared by all OwnersDb, or null if not cached.
+  private final ParsedCache parsedCache;
+  // One OwnersDb can be shared by all changes of the same branch snapshot.
+  // Directories are loaded under the write lock; owners are found under the read lock.
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
   String key = ""; // key to find this OwnersDb in a cache.
+  String branchKey = ""; // key of its project branch in a cache, set by Cache
   String revision = ""; // tip of branch revision, where OWENRS were found.
-  Map<String, Set<String>> dir2Globs = new HashMap<>(); // directory to file globs in the directory
-  Map<String, Set<String>> owner2Paths = new HashMap<>(); // owner email to owned dirs or file globs
-  Map<String, Set<String>> path2Owners = new HashMap<>(); // dir or file glob to owner emails
-  Set<String> readDirs = new HashSet<>(); // directories in which we have checked OWNERS
-  Set<String> stopLooking = new HashSet<>(); // directories where OWNERS has "set noparent"
-  Set<String> noParentGlobs = new HashSet<>(); // per-file globs with "set noparent"
+  long createTime = System.nanoTime(); // to refresh an old OwnersDb, set by Cache
+  volatile long weighedSize = 0; // estimated size when this OwnersDb was last weighed by a cache
+  private final PathTrie trie = new PathTrie(); // owners info of every directory
   Map<String, String> preferredEmails = new HashMap<>(); // owner email to preferred email
-  List<String> errors = new ArrayList<>(); // error messages
-  List<String> logs = new ArrayList<>(); // trace/debug messages
+  // Directory to its effective owners, computed when first used by findOwners
+  // under the read lock, and cleared when new OWNERS data are added.
+  private final Map<String, DirOwners> dirIndex = new ConcurrentHashMap<>();
+  // Other projects of all included files, to paths of their included files. The branch of the
+  // same name of these projects must be readable by a user of a shared OwnersDb, and an update
+  // of these files outdates this OwnersDb.
+  private final Map<String, Set<String>> includedProjects = new HashMap<>();
+
+  /** One directory searched by findOwners for a file. */
+  private static class Level {
+    final String dir; // ".", "./d1", "./d1/d2", etc.
+    final PathTrie.Node node; // owners info of dir
+    final String ownerPath; // dir + "/" if it has owners, or null
+    final GlobMatcher globs; // per-file globs in dir, or null
+
+    Level(String dir, PathTrie.Node node) {
+      this.dir = dir;
+      this.node = node;
+      this.ownerPath = (node == null || node.owners == null) ? null : dir + "/";
+      this.globs = (node == null) ? null : node.getGlobMatcher();
+    }
+  }
+
+  /**
+   * Effective owners of a directory, i.e. owners in the directory and all inherited parent
+   * directories up to the root or "set noparent". Files without any matched per-file glob have
+   * exactly these owners, and all files in the directory search the same levels.
+   */
+  private static class DirOwners {
+    final Level[] levels; // searched directories, from the directory up
+    final boolean hasGlobs; // any level has per-file globs
+    final List<String> paths = new ArrayList<>(); // owner paths of all levels
+    final List<Set<String>> owners = new ArrayList<>(); // owner emails of each path
+    final List<Integer> distances = new ArrayList<>(); // distance of each path
+    final boolean foundStar; // any level has '*' owner
 
+    DirOwners(Level level, DirOwners parent) {
+      int n = (parent == null) ? 0 : parent.levels.length;
+      levels = new Level[n + 1];
+      levels[0] = level;
+      boolean hasStar = false;
+      if (level.ownerPath != null) {
+        paths.add(level.ownerPath);
+        owners.add(level.node.owners);
+        distances.add(1);
+        hasStar = level.node.owners.contains("*");
+      }
+      if (parent == null) {
+        hasGlobs = level.globs != null;
+        foundStar = hasStar;
+        return;
+      }
+      System.arraycopy(parent.levels, 0, levels, 1, n);
+      hasGlobs = level.globs != null || parent.hasGlobs;
+      foundStar = hasStar || parent.foundStar;
+      int offset = (level.ownerPath == null) ? 0 : 1; // one more OWNERS below the parent
+      paths.addAll(parent.paths);
+      owners.addAll(parent.owners);
+      parent.distances.forEach(d -> distances.add(d + offset));
+    }
+  }
+
+  /**
+   * Creates an empty OwnersDb for one branch snapshot, i.e. the branch at revision branchId. OWNERS
+   * files are read later by loadOwnersFiles, for the changed files of each change.
+   */
   OwnersDb(
       PermissionBackend permissionBackend,
       ProjectState projectState,
@@ -84,151 +166,701 @@ class OwnersDb {
       Config config,
       ChangeData changeData,
       String branch,
-      Collection<String> files) {
+      ObjectId branchId,
+      String ownersFileName,
+      ParsedCache parsedCache,
+      Trace trace) {
     this.permissionBackend = permissionBackend;
     this.accountCache = accountCache;
     this.repoManager = repoManager;
     this.emails = emails;
     this.key = key;
     this.config = config;
-    try {
-      InetAddress inetAddress = InetAddress.getLocalHost();
-      logs.add("HostName:" + inetAddress.getHostName());
-    } catch (UnknownHostException e) {
-      logException(logs, "HostName:", e);
+    this.projectName = projectState.getName();
+    this.branch = branch;
+    this.branchId = branchId;
+    this.ownersFileName = ownersFileName;
+    this.parsedCache = parsedCache;
+    if (trace.isEnabled()) {
+      trace.log(hostName.get());
     }
-    logs.add("key:" + key);
+    trace.log("key:", key);
     preferredEmails.put("*", "*"); // '*' maps to itself, has no user account
-    String projectName = projectState.getName();
-    logs.add("project:" + projectName);
-    String ownersFileName = config.getOwnersFileName(projectState, changeData);
-    logs.add("ownersFileName:" + ownersFileName);
-    try (Repository repo = repoManager.openRepository(projectState.getNameKey())) {
-      // Some hacked CL could have a target branch that is not created yet.
-      ObjectId id = getBranchId(repo, branch, changeData, logs);
-      revision = "";
-      // For the same repo and branch id, keep content of all read files to avoid
-      // repeated read. This cache of files should be passed down to the Parser to
-      // avoid reading the same file through "include" or "file:" statements.
-      Map<String, String> readFiles = new HashMap<>();
-      if (id != null) {
-        if (!ownersFileName.equals(Config.OWNERS) && branch.equals("refs/heads/master")) {
-          // If ownersFileName is not the default "OWNERS", and current branch is master,
-          // this project should have a non-empty root file of that name.
-          // We added this requirement to detect errors in project config files
-          // and Gerrit server bugs that return wrong value of "ownersFileName".
-          String content =
-              getRepoFile(
-                  permissionBackend,
-                  readFiles,
-                  null,
-                  repo,
-                  id,
-                  projectName,
-                  branch,
-                  "/" + ownersFileName,
-                  logs);
-          String found = "Found";
-          if (content.isEmpty()) {
-            String changeId = Config.getChangeId(changeData);
-            logger.atSevere().log(
-                "Missing root %s for %s of %s", ownersFileName, changeId, projectName);
-            found = "Missing";
-          }
-          logs.add(found + " root " + ownersFileName);
+    trace.log("project:", projectName);
+    trace.log("ownersFileName:", ownersFileName);
+    // Some hacked CL could have a target branch that is not created yet.
+    trace.log("getBranchId:", branch, (branchId == null) ? " (NOT FOUND)" : " (FOUND)");
+    if (branchId == null) {
+      return;
+    }
+    revision = branchId.getName();
+    if (!ownersFileName.equals(Config.OWNERS) && branch.equals("refs/heads/master")) {
+      // If ownersFileName is not the default "OWNERS", and current branch is master,
+      // this project should have a non-empty root file of that name.
+      // We added this requirement to detect errors in project config files
+      // and Gerrit server bugs that return wrong value of "ownersFileName".
+      try (Repository repo = openRepository(repoManager, projectState.getNameKey(), trace);
+          BranchReader branchReader = new BranchReader(repo, projectName, branchId)) {
+        String content =
+            getRepoFile(
+                permissionBackend,
+                null,
+                null,
+                branchReader,
+                projectName,
+                branch,
+                "/" + ownersFileName,
+                trace);
+        String found = "Found";
+        if (content.isEmpty()) {
+          String changeId = Config.getChangeId(changeData);
+          logger.atSevere().log(
+              "Missing root %s for %s of %s", ownersFileName, changeId, projectName);
+          found = "Missing";
         }
-        for (String fileName : files) {
+        trace.log(found, " root ", ownersFileName);
+      } catch (Exception e) {
+        logger.atSevere().log(
+            "OwnersDb failed to find repository of project %s for %s",
+            projectName, Config.getChangeId(changeData));
+        logException(trace, "OwnersDb get repository", e);
+      }
+    }
+  }
+
+  // For unit tests and benchmarks without a repository; OWNERS files are added by addFile.
+  OwnersDb(Config config, String projectName, String branch, String ownersFileName) {
+    this.permissionBackend = null;
+    this.accountCache = null;
+    this.repoManager = null;
+    this.emails = null;
+    this.config = config;
+    this.projectName = projectName;
+    this.branch = branch;
+    this.branchId = null;
+    this.ownersFileName = ownersFileName;
+    this.parsedCache = null;
+    preferredEmails.put("*", "*");
+  }
+
+  /**
+   * Reads OWNERS files in the directories of the given files and their parent directories. Each
+   * directory is read only once per OwnersDb, so a cached OwnersDb only reads directories that were
+   * not needed by earlier changes of the same branch snapshot.
+   */
+  void loadOwnersFiles(Collection<String> files, Trace trace) {
+    if (branchId == null) {
+      return;
+    }
+    List<String> newFiles = new ArrayList<>(); // files in directories not read yet
+    lock.readLock().lock();
+    try {
+      for (String fileName : files) {
+        if (!isRead(Util.getParentDir(fileName))) {
+          newFiles.add(fileName);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (newFiles.isEmpty()) {
+      return;
+    }
+    // All OWNERS and included files of this project are read by one BranchReader.
+    try (Repository repo = openRepository(repoManager, Project.nameKey(projectName), trace);
+        BranchReader branchReader = new BranchReader(repo, projectName, branchId)) {
+      List<String> dirs = new ArrayList<>();
+      for (String fileName : newFiles) {
+        dirs.add(Util.getParentDir(fileName));
+      }
+      Map<String, ObjectId> ownersFileIds;
+      lock.readLock().lock();
+      try {
+        ownersFileIds = findOwnersFiles(branchReader, dirs, trace);
+      } finally {
+        lock.readLock().unlock();
+      }
+      // Saved parsed files are read from disk before the write lock,
+      // so users of a shared OwnersDb do not wait for the disk.
+      preloadParsedFiles(ownersFileIds);
+      lock.writeLock().lock();
+      try {
+        // Content of files read by this call, which are not kept in a cached OwnersDb.
+        Map<String, String> readFiles = new HashMap<>();
+        for (String fileName : newFiles) {
           // Find OWNERS in fileName's directory and parent directories.
           // Stop looking for a parent directory if OWNERS has "set noparent".
           fileName = Util.addDotPrefix(fileName); // e.g.   "./" "./d1/f1" "./d2/d3/"
           String dir = Util.getParentDir(fileName); // e.g. "."  "./d1"    "./d2"
-          logs.add("findOwnersFileFor:" + fileName);
-          // Multiple changed files can be in one directory, but each directory
-          // is only searched once for an OWNERS file.
-          // However any file (including another OWNERS file) can be included
-          // by OWNERS files in different directories. In that case, the included
-          // file could be parsed multiple times for different "dir".
-          // Since open/read a Gerrit repository file could be slow, getFile should keep
-          // a copy of all read files to avoid repeated accesses of the same file.
-          while (!readDirs.contains(dir)) {
-            readDirs.add(dir);
-            logs.add("findOwnersFileIn:" + dir);
-            String filePath = dir + "/" + ownersFileName;
-            String content =
-                getRepoFile(
+          if (isRead(dir)) {
+            continue; // read by another file or by a concurrent call
+          }
+          trace.log("findOwnersFileFor:", fileName);
+          loadOwnersFilesIn(branchReader, readFiles, ownersFileIds, dir, trace);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } catch (Exception e) {
+      logger.atSevere().log("OwnersDb failed to find repository of project %s", projectName);
+      logException(trace, "OwnersDb get repository", e);
+    }
+  }
+
+  /**
+   * Moves saved parsed files of OWNERS files found by findOwnersFiles from the persistent directory
+   * to memory, where loadOwnersFilesIn looks them up.
+   */
+  private void preloadParsedFiles(Map<String, ObjectId> ownersFileIds) {
+    if (parsedCache == null || ownersFileIds == null) {
+      return;
+    }
+    for (Map.Entry<String, ObjectId> entry : ownersFileIds.entrySet()) {
+      if (entry.getValue() != null) {
+        String filePath = entry.getKey() + "/" + ownersFileName;
+        parsedCache.get(Cache.makeParsedKey(entry.getValue(), filePath));
+      }
+    }
+  }
+
+  /**
+   * Reads OWNERS files in dir and its parent directories, until a directory read before.
+   * ownersFileIds has blob ids of OWNERS files found by findOwnersFiles, or is null. readFiles
+   * keeps content of files read by one build, to be read once through "include" or "file:"
+   * statements.
+   */
+  private void loadOwnersFilesIn(
+      BranchReader branchReader,
+      Map<String, String> readFiles,
+      Map<String, ObjectId> ownersFileIds,
+      String dir,
+      Trace trace) {
+    // Multiple changed files can be in one directory, but each directory
+    // is only searched once for an OWNERS file.
+    // However any file (including another OWNERS file) can be included
+    // by OWNERS files in different directories. In that case, the included
+    // file could be parsed multiple times for different "dir".
+    // Since open/read a Gerrit repository file could be slow, getFile should keep
+    // a copy of all read files to avoid repeated accesses of the same file.
+    PathTrie.Node node = trie.add(dir);
+    while (!node.read) {
+      node.read = true;
+      trace.log("findOwnersFileIn:", dir);
+      trace.add(Trace.Counter.DIRS, 1);
+      String filePath = dir + "/" + ownersFileName;
+      boolean found = ownersFileIds != null && ownersFileIds.containsKey(dir);
+      ObjectId blobId =
+          found ? ownersFileIds.get(dir) : getParsedFileId(branchReader, filePath, trace);
+      String parsedKey =
+          (blobId == null || parsedCache == null) ? null : Cache.makeParsedKey(blobId, filePath);
+      // Only parsed files in memory are used; the disk is not read under the write lock.
+      Parser.Result result = (parsedKey == null) ? null : parsedCache.getIfPresent(parsedKey);
+      if (result != null) {
+        trace.log("useParsed:", filePath);
+        addResult(dir + "/", result, trace);
+        node.result = result;
+      } else {
+        String content =
+            found
+                ? readOwnersFile(branchReader, readFiles, filePath, blobId, trace)
+                : getRepoFile(
                     permissionBackend,
                     readFiles,
                     null,
-                    repo,
-                    id,
+                    branchReader,
                     projectName,
                     branch,
                     filePath,
-                    logs);
-            if (content != null && !content.isEmpty()) {
+                    trace);
+        if (content != null && !content.isEmpty()) {
+          trace.add(Trace.Counter.OWNERS_FILES, 1);
+          result =
               addFile(
+                  branchReader,
                   readFiles,
                   projectName,
                   branch,
                   dir + "/",
-                  dir + "/" + ownersFileName,
-                  content.split("\\R"));
-            }
-            if (stopLooking.contains(dir + "/") || !dir.contains("/")) {
-              break; // stop looking through parent directory
-            }
-            dir = Util.getDirName(dir); // go up one level
+                  filePath,
+                  content.split("\\R"),
+                  trace);
+          node.result = result.withoutMessages();
+          // A file with include or file: statements depends on other files.
+          if (parsedKey != null && result.includedFiles.isEmpty()) {
+            parsedCache.put(parsedKey, node.result);
           }
         }
-        try {
-          revision = repo.exactRef(branch).getObjectId().getName();
-        } catch (Exception e) {
-          logger.atSevere().withCause(e).log(
-              "Fail to get branch revision for %s", Config.getChangeId(changeData));
-          logException(logs, "OwnersDb get revision", e);
+      }
+      if (node.stopLooking || node.parent == null) {
+        break; // stop looking through parent directory
+      }
+      dir = Util.getDirName(dir); // go up one level
+      node = node.parent;
+    }
+  }
+
+  // For unit tests without a repository; like loadOwnersFilesIn, reads the OWNERS file of dir,
+  // e.g. "./d1", from content, which is empty if there is no such file.
+  void loadOwnersFile(String dir, String content) {
+    lock.writeLock().lock();
+    try {
+      PathTrie.Node node = trie.add(dir);
+      node.read = true;
+      String filePath = dir + "/" + ownersFileName;
+      Map<String, String> readFiles = new HashMap<>();
+      saveReadFile(readFiles, projectName, Util.gitRepoFilePath(filePath), content);
+      if (!content.isEmpty()) {
+        node.result =
+            addFile(
+                    readFiles,
+                    projectName,
+                    branch,
+                    dir + "/",
+                    filePath,
+                    content.split("\\R"),
+                    Trace.NONE)
+                .withoutMessages();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns true if OWNERS in dir has been checked. */
+  private boolean isRead(String dir) {
+    PathTrie.Node node = trie.find(dir);
+    return node != null && node.read;
+  }
+
+  /**
+   * Finds OWNERS files in dirs and their parent directories not read yet, by one walk of the branch
+   * tree that enters only the subtrees leading to these directories. Returns a map of each searched
+   * directory to the blob id of its OWNERS file, or null if it has none. Returns null if the files
+   * cannot be found this way; then each file is looked up by getRepoFile.
+   */
+  private Map<String, ObjectId> findOwnersFiles(
+      BranchReader branchReader, Collection<String> dirs, Trace trace) {
+    if (ownersFileName.contains("/")
+        || !hasReadAccess(permissionBackend, projectName, branch, Trace.NONE)) {
+      return null;
+    }
+    Set<String> searchDirs = new HashSet<>(); // git paths of directories, "" for the root
+    Set<String> subtrees = new HashSet<>(); // git paths of searchDirs and their parents
+    for (String dir : dirs) {
+      for (String d = dir; d != null && !isRead(d); d = Util.getDirName(d)) {
+        String path = d.equals(".") ? "" : Util.gitRepoFilePath(d);
+        if (!searchDirs.add(path)) {
+          break; // parent directories are added too
         }
+        for (String p = path; !p.isEmpty() && subtrees.add(p); ) {
+          int slash = p.lastIndexOf('/');
+          p = (slash < 0) ? "" : p.substring(0, slash);
+        }
+      }
+    }
+    Map<String, ObjectId> ids = new HashMap<>();
+    for (String path : searchDirs) {
+      ids.put(path.isEmpty() ? "." : "./" + path, null);
+    }
+    if (searchDirs.isEmpty()) {
+      return ids;
+    }
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.FILE_READ);
+    try (TreeWalk treeWalk = new TreeWalk(branchReader.getObjectReader())) {
+      treeWalk.addTree(branchReader.getRootTree());
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(new OwnersFileFilter(ownersFileName, searchDirs, subtrees, branchReader));
+      while (treeWalk.next()) {
+        String path = treeWalk.getPathString();
+        int slash = path.lastIndexOf('/');
+        ids.put((slash < 0) ? "." : "./" + path.substring(0, slash), treeWalk.getObjectId(0));
       }
+      return ids;
     } catch (Exception e) {
-      logger.atSevere().log(
-          "OwnersDb failed to find repository of project %s for %s",
-          projectName, Config.getChangeId(changeData));
-      logException(logs, "OwnersDb get repository", e);
+      logger.atSevere().withCause(e).log("find %s files in %s", ownersFileName, projectName);
+      logException(trace, "findOwnersFiles", e);
+      return null;
+    } finally {
+      timer.stop();
     }
-    countNumOwners(files);
   }
 
-  int getNumOwners() {
-    return (numOwners >= 0) ? numOwners : owner2Paths.size();
+  /**
+   * Selects files named fileName in directories dirs, and enters only subtrees of dirs and their
+   * parent directories. All paths are git paths, "" for the root. Entered subtrees are saved in
+   * branchReader for later reads of included files.
+   */
+  private static class OwnersFileFilter extends TreeFilter {
+    private final String fileName;
+    private final Set<String> dirs;
+    private final Set<String> subtrees;
+    private final BranchReader branchReader;
+
+    OwnersFileFilter(
+        String fileName, Set<String> dirs, Set<String> subtrees, BranchReader branchReader) {
+      this.fileName = fileName;
+      this.dirs = dirs;
+      this.subtrees = subtrees;
+      this.branchReader = branchReader;
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) {
+      if (walker.isSubtree()) {
+        String path = walker.getPathString();
+        if (!subtrees.contains(path)) {
+          return false;
+        }
+        branchReader.putTree(path, walker.getObjectId(0));
+        return true;
+      }
+      if (!fileName.equals(walker.getNameString())) {
+        return false;
+      }
+      String path = walker.getPathString();
+      int slash = path.lastIndexOf('/');
+      return dirs.contains((slash < 0) ? "" : path.substring(0, slash));
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+      return true;
+    }
+
+    @Override
+    public TreeFilter clone() {
+      return this; // immutable
+    }
   }
 
-  private void countNumOwners(Collection<String> files) {
-    logs.add("countNumOwners");
-    Map<String, Set<String>> file2Owners = findOwners(files, null, logs);
-    if (file2Owners != null) {
-      Set<String> emails = new HashSet<>();
-      file2Owners.values().forEach(emails::addAll);
-      numOwners = emails.size();
-    } else {
-      numOwners = owner2Paths.size();
+  /** Returns content of an OWNERS file with blobId found by findOwnersFiles, or empty string. */
+  private String readOwnersFile(
+      BranchReader branchReader,
+      Map<String, String> readFiles,
+      String filePath,
+      ObjectId blobId,
+      Trace trace) {
+    // Same debug messages as getRepoFile and getFile.
+    if (trace.isEnabled()) {
+      trace.log("getRepoFile:", Parser.getFileKey(projectName, branch, filePath));
     }
+    String file = Util.gitRepoFilePath(filePath);
+    String content = findReadFile(readFiles, projectName, file);
+    if (content == null) {
+      if (blobId != null) {
+        content = branchReader.readFile(blobId, file, trace);
+      } else {
+        content = "";
+        trace.log("getFile:", file, " (NOT FOUND)");
+      }
+      saveReadFile(readFiles, projectName, file, content);
+    }
+    return content;
   }
 
-  void addOwnerPathPair(String owner, String path) {
-    Util.addToMap(owner2Paths, owner, path);
-    Util.addToMap(path2Owners, path, owner);
-    if (path.length() > 0 && path.charAt(path.length() - 1) != '/') {
-      add2dir2Globs(Util.getDirName(path) + "/", path); // A file glob.
+  /** Returns blob id of an OWNERS file, or null if parsedCache is not used or file not found. */
+  private ObjectId getParsedFileId(BranchReader branchReader, String filePath, Trace trace) {
+    if (parsedCache == null || !hasReadAccess(permissionBackend, projectName, branch, Trace.NONE)) {
+      return null;
     }
+    String file = Util.gitRepoFilePath(filePath);
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.FILE_READ);
+    try {
+      return branchReader.findFile(file);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("get file id %s", file);
+    } finally {
+      timer.stop();
+    }
+    return null;
   }
 
-  void add2dir2Globs(String dir, String glob) {
-    Util.addToMap(dir2Globs, dir, glob);
+  /**
+   * Copies parsed OWNERS files from an OwnersDb of an older revision of the same branch. Only
+   * directories whose OWNERS file or included files have changed between the two revisions are read
+   * and parsed again. Directories with files included from other projects are always read again,
+   * because changes of other projects are not found by comparing the two revisions.
+   */
+  void copyUnchangedFrom(OwnersDb previous, Trace trace) {
+    if (branchId == null || previous.branchId == null || previous == this) {
+      return;
+    }
+    Map<String, Parser.Result> oldDirResults;
+    Set<String> oldReadDirs;
+    previous.lock.readLock().lock();
+    try {
+      oldDirResults = new HashMap<>();
+      oldReadDirs = new HashSet<>();
+      previous.trie.forEach(
+          node -> {
+            if (node.read) {
+              String dir = node.getPath();
+              oldReadDirs.add(dir);
+              if (node.result != null) {
+                oldDirResults.put(dir, node.result);
+              }
+            }
+          });
+    } finally {
+      previous.lock.readLock().unlock();
+    }
+    lock.writeLock().lock();
+    try (Repository repo = openRepository(repoManager, Project.nameKey(projectName), trace);
+        BranchReader branchReader = new BranchReader(repo, projectName, branchId)) {
+      trace.log("copyUnchangedFrom:", previous.revision);
+      // With the same revision, only directories that include other projects are read again.
+      Set<String> changedFiles =
+          branchId.equals(previous.branchId)
+              ? new HashSet<>()
+              : getChangedFiles(repo, previous.branchId, branchId);
+      String prefix = Parser.getFileKey(projectName, "");
+      Set<String> changedDirs = new HashSet<>();
+      Set<String> owners = new HashSet<>();
+      for (String dir : oldReadDirs) {
+        Parser.Result result = oldDirResults.get(dir);
+        if (isChanged(dir, result, prefix, changedFiles)) {
+          changedDirs.add(dir);
+        } else if (result != null) {
+          owners.addAll(result.owner2paths.keySet());
+        }
+      }
+      addPreferredEmails(owners, trace); // look up all unchanged owners at once
+      for (String dir : oldReadDirs) {
+        Parser.Result result = oldDirResults.get(dir);
+        if (!changedDirs.contains(dir)) {
+          PathTrie.Node node = trie.add(dir);
+          node.read = true;
+          if (result != null) {
+            node.result = result;
+            addResult(dir + "/", result, trace);
+          }
+        }
+      }
+      if (trace.isEnabled()) {
+        trace.log("changedDirs:" + changedDirs.size() + "/" + oldReadDirs.size());
+      }
+      Map<String, ObjectId> ownersFileIds = findOwnersFiles(branchReader, changedDirs, trace);
+      // This OwnersDb is not shared yet, so no user waits for its write lock.
+      preloadParsedFiles(ownersFileIds);
+      Map<String, String> readFiles = new HashMap<>();
+      // Force an ordered search sequence.
+      for (String dir : Ordering.natural().sortedCopy(changedDirs)) {
+        loadOwnersFilesIn(branchReader, readFiles, ownersFileIds, dir, trace);
+      }
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log(
+          "OwnersDb failed to copy %s from revision %s", key, previous.revision);
+      logException(trace, "copyUnchangedFrom", e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns true if the OWNERS file of dir or any file it depends on is changed. */
+  private boolean isChanged(
+      String dir, Parser.Result result, String prefix, Set<String> changedFiles) {
+    if (changedFiles.contains(Util.gitRepoFilePath(dir + "/" + ownersFileName))) {
+      return true;
+    }
+    if (result != null) {
+      for (String file : result.includedFiles) {
+        // Files of other projects are not compared, treat them as changed.
+        if (!file.startsWith(prefix) || changedFiles.contains(file.substring(prefix.length()))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if this OwnersDb is outdated by an update of a project branch, i.e. the branch of
+   * this OwnersDb is moved, or this OwnersDb includes changed files of the updated branch.
+   *
+   * @param project the updated project.
+   * @param updatedBranch the updated branch.
+   * @param newId new revision of the updated branch, or null if deleted.
+   * @param changedFiles supplies changed files of the updated branch, or null if unknown.
+   */
+  boolean isOutdatedBy(
+      String project, String updatedBranch, ObjectId newId, Supplier<Set<String>> changedFiles) {
+    if (!branch.equals(updatedBranch)) {
+      return false;
+    }
+    if (projectName.equals(project)) {
+      return !Objects.equals(branchId, newId);
+    }
+    Set<String> files; // included files of the updated project
+    lock.readLock().lock();
+    try {
+      Set<String> included = includedProjects.get(project);
+      if (included == null) {
+        return false;
+      }
+      files = new HashSet<>(included);
+    } finally {
+      lock.readLock().unlock();
+    }
+    Set<String> changed = changedFiles.get();
+    return changed == null || !Collections.disjoint(files, changed);
+  }
+
+  /**
+   * Returns true if the current user of permissionBackend can read all files that this OwnersDb has
+   * read, i.e. the branch of its project and the same branch of all projects of included files. A
+   * cached OwnersDb reads files without permission checks, so it is used for a user only if this is
+   * true. A null permissionBackend can read all files, as when OwnersDb is built.
+   */
+  boolean canRead(PermissionBackend permissionBackend) {
+    if (permissionBackend == null) {
+      return true;
+    }
+    List<String> projects = new ArrayList<>();
+    projects.add(projectName);
+    lock.readLock().lock();
+    try {
+      projects.addAll(includedProjects.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    for (String project : projects) {
+      if (!hasReadAccess(permissionBackend, project, branch, Trace.NONE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns paths of all files that are different in the two revisions. */
+  static Set<String> getChangedFiles(Repository repo, ObjectId oldId, ObjectId newId)
+      throws IOException {
+    Set<String> files = new HashSet<>();
+    try (RevWalk revWalk = new RevWalk(repo);
+        TreeWalk treeWalk = new TreeWalk(revWalk.getObjectReader())) {
+      treeWalk.setRecursive(true);
+      treeWalk.setFilter(TreeFilter.ANY_DIFF);
+      treeWalk.addTree(revWalk.parseCommit(oldId).getTree());
+      treeWalk.addTree(revWalk.parseCommit(newId).getTree());
+      while (treeWalk.next()) {
+        files.add(treeWalk.getPathString());
+      }
+    }
+    return files;
+  }
+
+  /** Copies errors and logs of trace, path2owners and owner2paths into REST API debug messages. */
+  void copyDebugMsgs(RestResult.DebugMessages dbgmsgs, Trace trace) {
+    lock.readLock().lock();
+    try {
+      Map<String, Set<String>> path2Owners = new HashMap<>();
+      Map<String, Set<String>> owner2Paths = new HashMap<>();
+      trie.forEach(
+          node -> {
+            if (node.owners != null) {
+              String path = node.getPath() + "/";
+              Util.addAllToMap(path2Owners, path, node.owners);
+              node.owners.forEach(owner -> Util.addToMap(owner2Paths, owner, path));
+            }
+            if (node.globOwners != null) {
+              node.globOwners.forEach(
+                  (glob, owners) -> {
+                    if (!owners.isEmpty()) {
+                      Util.addAllToMap(path2Owners, glob, owners);
+                      owners.forEach(owner -> Util.addToMap(owner2Paths, owner, glob));
+                    }
+                  });
+            }
+          });
+      dbgmsgs.errors = new ArrayList<>(trace.getErrors());
+      dbgmsgs.path2owners = Util.makeSortedMap(path2Owners);
+      dbgmsgs.owner2paths = Util.makeSortedMap(owner2Paths);
+      dbgmsgs.logs = new ArrayList<>(trace.getLogs());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Estimated heap sizes, in bytes, of an object and an entry of a HashMap or HashSet.
+  private static final int OBJECT_BYTES = 16;
+  private static final int ENTRY_BYTES = 48;
+
+  private static long sizeOf(String s) {
+    return (s == null) ? 0 : OBJECT_BYTES * 3 + s.length(); // String and its byte array
+  }
+
+  private static long sizeOf(Collection<String> strings) {
+    long size = OBJECT_BYTES * 4;
+    for (String s : strings) {
+      size += ENTRY_BYTES + sizeOf(s);
+    }
+    return size;
+  }
+
+  private static long sizeOf(Parser.Result result) {
+    long size = OBJECT_BYTES * 4;
+    for (Map.Entry<String, Set<String>> entry : result.owner2paths.entrySet()) {
+      size += ENTRY_BYTES + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+    }
+    return size
+        + sizeOf(result.warnings)
+        + sizeOf(result.errors)
+        + sizeOf(result.noParentGlobs)
+        + sizeOf(result.includedFiles);
+  }
+
+  /**
+   * Returns an estimated heap size of this OwnersDb in bytes, used to weigh it in a cache. Owner
+   * emails and parsed files shared with other OwnersDb are counted as if they were not shared.
+   */
+  long estimateSize() {
+    lock.readLock().lock();
+    try {
+      long[] size = {OBJECT_BYTES * 32 + sizeOf(key) + sizeOf(revision)};
+      trie.forEach(
+          node -> {
+            size[0] += OBJECT_BYTES * 4 + sizeOf(node.name);
+            if (node.owners != null) {
+              size[0] += sizeOf(node.owners);
+            }
+            if (node.globOwners != null) {
+              for (Map.Entry<String, Set<String>> entry : node.globOwners.entrySet()) {
+                size[0] += ENTRY_BYTES + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+              }
+            }
+            if (node.result != null) {
+              size[0] += sizeOf(node.result);
+            }
+          });
+      size[0] += sizeOf(preferredEmails.values());
+      for (Map.Entry<String, Set<String>> entry : includedProjects.entrySet()) {
+        size[0] += ENTRY_BYTES + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+      }
+      for (DirOwners dirOwners : dirIndex.values()) {
+        // Each DirOwners has one new Level, and shares other levels with its parent.
+        Level level = dirOwners.levels[0];
+        size[0] +=
+            ENTRY_BYTES
+                + OBJECT_BYTES * 12
+                + 8L * dirOwners.levels.length
+                + 24L * dirOwners.paths.size()
+                + sizeOf(level.dir)
+                + sizeOf(level.ownerPath);
+      }
+      return size[0];
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
-  void addPreferredEmails(Set<String> ownerEmails) {
+  void addPreferredEmails(Set<String> ownerEmails, Trace trace) {
     List<String> owners = new ArrayList<>(ownerEmails);
     owners.removeIf(o -> preferredEmails.get(o) != null);
-    if (!owners.isEmpty()) {
+    if (owners.isEmpty()) {
+      return;
+    }
+    trace.add(Trace.Counter.EMAILS, owners.size());
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.EMAIL_LOOKUP);
+    try {
       String[] ownerEmailsAsArray = new String[owners.size()];
       owners.toArray(ownerEmailsAsArray);
       Multimap<String, Account.Id> email2ids = null;
@@ -236,17 +868,17 @@ class OwnersDb {
         email2ids = emails.getAccountsFor(ownerEmailsAsArray);
       } catch (Exception e) {
         logger.atSevere().withCause(e).log("accounts.byEmails failed");
-        logException(logs, "getAccountsFor:" + ownerEmailsAsArray[0], e);
+        logException(trace, "getAccountsFor:" + ownerEmailsAsArray[0], e);
       }
       for (String owner : ownerEmailsAsArray) {
         String email = owner;
         try {
           if (email2ids == null) {
-            errors.add(owner);
+            trace.error(owner);
           } else {
             Collection<Account.Id> ids = email2ids.get(owner);
             if (ids == null || ids.size() != 1) {
-              errors.add(owner);
+              trace.error(owner);
             } else {
               // Accounts may have no preferred email.
               email =
@@ -258,33 +890,73 @@ class OwnersDb {
           }
         } catch (Exception e) {
           logger.atSevere().withCause(e).log("Fail to find preferred email of %s", owner);
-          errors.add(owner);
+          trace.error(owner);
         }
         if (email == null) {
           logger.atSevere().log("accountCache failed to find preferred email of %s", owner);
-          errors.add(owner);
+          trace.error(owner);
           email = owner;
         }
         preferredEmails.put(owner, email);
       }
+    } finally {
+      timer.stop();
     }
   }
 
-  void addFile(
+  Parser.Result addFile(
+      Map<String, String> readFiles,
+      String project,
+      String branch,
+      String dirPath,
+      String filePath,
+      String[] lines,
+      Trace trace) {
+    return addFile(null, readFiles, project, branch, dirPath, filePath, lines, trace);
+  }
+
+  /** Parses and adds an OWNERS file; its included files of project are read by branchReader. */
+  private Parser.Result addFile(
+      BranchReader branchReader,
       Map<String, String> readFiles,
       String project,
       String branch,
       String dirPath,
       String filePath,
-      String[] lines) {
+      String[] lines,
+      Trace trace) {
     Parser parser =
-        new Parser(permissionBackend, readFiles, repoManager, project, branch, filePath, logs);
-    Parser.Result result = parser.parseFile(dirPath, lines);
+        new Parser(
+            permissionBackend,
+            readFiles,
+            repoManager,
+            branchReader,
+            project,
+            branch,
+            filePath,
+            trace);
+    Parser.Result result;
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.PARSE);
+    try {
+      result = parser.parseFile(dirPath, lines);
+    } finally {
+      timer.stop();
+    }
+    addResult(dirPath, result, trace);
+    if (config.getReportSyntaxError()) {
+      Ordering.natural().sortedCopy(result.errors).forEach(e -> logger.atSevere().log("%s", e));
+      Ordering.natural().sortedCopy(result.warnings).forEach(w -> logger.atWarning().log("%s", w));
+    }
+    return result;
+  }
+
+  /** Adds parsed owners of an OWNERS file in dirPath. */
+  private void addResult(String dirPath, Parser.Result result, Trace trace) {
+    dirIndex.clear(); // effective owners of dirPath and its subdirectories could change
     if (result.stopLooking) {
-      stopLooking.add(dirPath);
+      trie.add(dirPath).stopLooking = true;
     }
-    noParentGlobs.addAll(result.noParentGlobs);
-    addPreferredEmails(result.owner2paths.keySet());
+    addPreferredEmails(result.owner2paths.keySet(), trace);
     for (String owner : result.owner2paths.keySet()) {
       String email = preferredEmails.get(owner);
       if (email == null) {
@@ -292,36 +964,39 @@ class OwnersDb {
         email = owner;
       }
       for (String path : result.owner2paths.get(owner)) {
-        addOwnerPathPair(email, path);
+        if (path.isEmpty() || path.endsWith("/")) {
+          trie.add(path).addOwner(email); // A directory.
+        } else {
+          trie.addParentOf(path).addGlobOwner(path, email); // A file glob.
+        }
       }
     }
     for (String glob : result.noParentGlobs) {
-      add2dir2Globs(Util.getDirName(glob) + "/", glob);
+      trie.addParentOf(glob).addNoParentGlob(glob);
     }
-    if (config.getReportSyntaxError()) {
-      Ordering.natural().sortedCopy(result.errors).forEach(e -> logger.atSevere().log("%s", e));
-      Ordering.natural().sortedCopy(result.warnings).forEach(w -> logger.atWarning().log("%s", w));
+    for (String file : result.includedFiles) {
+      int colon = file.indexOf(':');
+      String project = file.substring(0, colon);
+      if (!project.equals(projectName)) {
+        includedProjects
+            .computeIfAbsent(project, (String k) -> new HashSet<>())
+            .add(file.substring(colon + 1));
+      }
     }
   }
 
-  private void addOwnerWeights(
-      ArrayList<String> paths,
-      ArrayList<Integer> distances,
+  private static void addOwnerWeights(
+      List<String> paths,
+      List<Set<String>> owners,
+      List<Integer> distances,
       String file,
       Map<String, Set<String>> file2Owners,
       Map<String, OwnerWeights> map,
-      List<String> logs) {
+      Trace trace) {
     for (int i = 0; i < paths.size(); i++) {
-      logs.add("addOwnerWeightsIn:" + paths.get(i));
-      Set<String> owners = path2Owners.get(paths.get(i));
-      if (owners == null) {
-        continue;
-      }
-      for (String name : owners) {
+      trace.log("addOwnerWeightsIn:", paths.get(i));
+      for (String name : owners.get(i)) {
         Util.addToMap(file2Owners, file, name);
-        if (map == null) {
-          continue;
-        }
         if (map.containsKey(name)) {
           map.get(name).addFile(file, distances.get(i));
         } else {
@@ -331,110 +1006,159 @@ class OwnersDb {
     }
   }
 
-  /** Quick method to find owner emails of every file. */
-  Map<String, Set<String>> findOwners(Collection<String> files) {
-    return findOwners(files, null, new ArrayList<>());
-  }
-
-  /** Returns owner emails of every file and set up ownerWeights. */
-  Map<String, Set<String>> findOwners(
-      Collection<String> files, Map<String, OwnerWeights> ownerWeights, List<String> logs) {
-    return findOwners(files.toArray(new String[0]), ownerWeights, logs);
+  /** Quick method to find owners of every file. */
+  OwnersResult findOwners(Collection<String> files) {
+    return findOwners(files, Trace.NONE);
   }
 
-  /** Returns owner emails of every file and set up ownerWeights. */
-  Map<String, Set<String>> findOwners(
-      String[] files, Map<String, OwnerWeights> ownerWeights, List<String> logs) {
-    // Returns a map of file to set of owner emails.
-    // If ownerWeights is not null, add to it owner to distance-from-dir;
+  /** Returns owner emails of every file, owner weights and number of owners, in one pass. */
+  OwnersResult findOwners(Collection<String> files, Trace trace) {
+    // Owner weights keep owner to distance-from-dir;
     // a distance of 1 is the lowest/closest possible distance
     // (which makes the subsequent math easier).
-    logs.add("findOwners");
-    Arrays.sort(files); // Force an ordered search sequence.
-    Map<String, Set<String>> file2Owners = new HashMap<>();
+    trace.log("findOwners");
+    String[] sortedFiles = files.toArray(new String[0]);
+    Arrays.sort(sortedFiles); // Force an ordered search sequence.
+    OwnersResult result = new OwnersResult();
+    long start = System.nanoTime();
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.MATCH);
+    lock.readLock().lock();
+    try {
+      findOwners(sortedFiles, result.file2Owners, result.ownerWeights, trace);
+    } finally {
+      lock.readLock().unlock();
+      timer.stop();
+    }
+    trace.addMatch(sortedFiles.length, System.nanoTime() - start);
+    return result;
+  }
+
+  private void findOwners(
+      String[] files,
+      Map<String, Set<String>> file2Owners,
+      Map<String, OwnerWeights> ownerWeights,
+      Trace trace) {
     for (String fileName : files) {
       fileName = Util.addDotPrefix(fileName);
-      logs.add("checkFile:" + fileName);
+      trace.log("checkFile:", fileName);
       String dirPath = Util.getParentDir(fileName); // ".", "./d1", "./d1/d2", etc.
+      DirOwners dirOwners = getDirOwners(dirPath);
+      if (!dirOwners.hasGlobs) {
+        // No per-file glob to match; all files in dirPath have the same owners.
+        for (Level level : dirOwners.levels) {
+          trace.log("checkDir:", level.dir);
+        }
+        if (dirOwners.foundStar) {
+          trace.log("found * in:", fileName);
+        }
+        addOwnerWeights(
+            dirOwners.paths,
+            dirOwners.owners,
+            dirOwners.distances,
+            fileName,
+            file2Owners,
+            ownerWeights,
+            trace);
+        continue;
+      }
       String baseName = fileName.substring(dirPath.length() + 1);
       int distance = 1;
-      FileSystem fileSystem = FileSystems.getDefault();
       // Collect all matched (path, distance) in all OWNERS files for
       // fileName. Add all of them, even with the special "*" owner.
-      ArrayList<String> paths = new ArrayList<>();
-      ArrayList<Integer> distances = new ArrayList<>();
+      List<String> paths = new ArrayList<>();
+      List<Set<String>> owners = new ArrayList<>();
+      List<Integer> distances = new ArrayList<>();
       boolean foundStar = false;
-      while (true) {
+      for (Level level : dirOwners.levels) {
         int savedSizeOfPaths = paths.size();
-        logs.add("checkDir:" + dirPath);
+        trace.log("checkDir:", level.dir);
         boolean foundNoParentGlob = false;
-        if (dir2Globs.containsKey(dirPath + "/")) {
-          Set<String> patterns = dir2Globs.get(dirPath + "/");
-          for (String pat : patterns) {
-            PathMatcher matcher = fileSystem.getPathMatcher("glob:" + pat);
-            if (matcher.matches(Paths.get(dirPath, baseName))) {
-              foundStar |= findStarOwner(pat, distance, paths, distances);
-              foundNoParentGlob |= noParentGlobs.contains(pat);
-              // Do not break here, a file could match multiple globs
-              // with different owners.
-              // OwnerWeights.add won't add duplicated files.
+        if (level.globs != null) {
+          // Do not stop at the first matched glob, a file could match multiple globs
+          // with different owners.
+          // OwnerWeights.add won't add duplicated files.
+          for (int k = 0; k < level.globs.size(); k++) {
+            if (!level.globs.matches(k, level.dir, baseName)) {
+              continue;
             }
+            String pat = level.globs.getGlob(k);
+            foundStar |=
+                findStarOwner(
+                    pat, level.node.globOwners.get(pat), distance, paths, owners, distances);
+            foundNoParentGlob |=
+                level.node.noParentGlobs != null && level.node.noParentGlobs.contains(pat);
           }
         }
         // Unless foundNoParentGlob, we should check the general non-per-file owners.
-        if (!foundNoParentGlob) {
-          foundStar |= findStarOwner(dirPath + "/", distance, paths, distances);
+        if (!foundNoParentGlob && level.ownerPath != null) {
+          foundStar |=
+              findStarOwner(level.ownerPath, level.node.owners, distance, paths, owners, distances);
         }
-        if (stopLooking.contains(dirPath + "/") // stop looking parent
-            || foundNoParentGlob // per-file "set noparent"
-            || !dirPath.contains("/") /* root */) {
-          break;
+        if (foundNoParentGlob) {
+          break; // per-file "set noparent"
         }
         if (paths.size() != savedSizeOfPaths) {
           distance++; // increase distance for each found OWNERS
         }
-        dirPath = Util.getDirName(dirPath); // go up one level
       }
       if (foundStar) {
-        logs.add("found * in:" + fileName);
+        trace.log("found * in:", fileName);
       }
-      addOwnerWeights(paths, distances, fileName, file2Owners, ownerWeights, logs);
+      addOwnerWeights(paths, owners, distances, fileName, file2Owners, ownerWeights, trace);
     }
-    return file2Owners;
   }
 
-  /** Returns true if path has '*' owner. */
-  private boolean findStarOwner(
-      String path, int distance, ArrayList<String> paths, ArrayList<Integer> distances) {
-    Set<String> owners = path2Owners.get(path);
-    if (owners != null) {
-      paths.add(path);
-      distances.add(distance);
-      if (owners.contains("*")) {
-        return true;
-      }
+  /** Returns effective owners of dirPath, from dirIndex or computed from its parent. */
+  private DirOwners getDirOwners(String dirPath) {
+    DirOwners dirOwners = dirIndex.get(dirPath);
+    if (dirOwners != null) {
+      return dirOwners;
     }
-    return false;
+    PathTrie.Node node = trie.find(dirPath);
+    DirOwners parent =
+        ((node != null && node.stopLooking) || !dirPath.contains("/") /* root */)
+            ? null
+            : getDirOwners(Util.getDirName(dirPath));
+    dirOwners = new DirOwners(new Level(dirPath, node), parent);
+    DirOwners old = dirIndex.putIfAbsent(dirPath, dirOwners);
+    return (old == null) ? dirOwners : old;
+  }
+
+  /** Adds a path with owners; returns true if it has '*' owner. */
+  private static boolean findStarOwner(
+      String path,
+      Set<String> pathOwners,
+      int distance,
+      List<String> paths,
+      List<Set<String>> owners,
+      List<Integer> distances) {
+    if (pathOwners == null || pathOwners.isEmpty()) {
+      return false; // a per-file glob with only "set noparent"
+    }
+    paths.add(path);
+    owners.add(pathOwners);
+    distances.add(distance);
+    return pathOwners.contains("*");
   }
 
   /** Returns ObjectId of the given branch, or null. */
-  private static ObjectId getBranchId(
-      Repository repo, String branch, ChangeData changeData, List<String> logs) {
-    String header = "getBranchId:" + branch;
-    try {
+  static ObjectId getBranchId(
+      GitRepositoryManager repoManager,
+      Project.NameKey project,
+      String branch,
+      ChangeData changeData,
+      Trace trace) {
+    try (Repository repo = openRepository(repoManager, project, trace)) {
       ObjectId id = repo.resolve(branch);
       if (id == null && changeData != null && !Checker.isExemptFromOwnerApproval(changeData)) {
         logger.atSevere().log(
             "cannot find branch %s for %s", branch, Config.getChangeId(changeData));
-        logs.add(header + " (NOT FOUND)");
-      } else {
-        logs.add(header + " (FOUND)");
       }
       return id;
     } catch (Exception e) {
       logger.atSevere().withCause(e).log(
-          "cannot find branch %s for %s", branch, Config.getChangeId(changeData));
-      logException(logs, header, e);
+          "cannot find branch %s of project %s for %s",
+          branch, project.get(), Config.getChangeId(changeData));
     }
     return null;
   }
@@ -455,7 +1179,7 @@ class OwnersDb {
   }
 
   private static boolean hasReadAccess(
-      PermissionBackend permissionBackend, String project, String branch, List<String> logs) {
+      PermissionBackend permissionBackend, String project, String branch, Trace trace) {
     if (permissionBackend == null || branch == null || project == null) {
       return true; // cannot check, so assume okay
     }
@@ -471,77 +1195,75 @@ class OwnersDb {
     } catch (AuthException | PermissionBackendException e) {
       logger.atSevere().withCause(e).log(
           "getFile cannot read file in project %s branch %s", project, branch);
-      logException(logs, "hasReadAccess", e);
+      logException(trace, "hasReadAccess", e);
       return false;
     }
     return true;
   }
 
-  /** Returns file content or empty string; uses project+branch+file names. */
+  /**
+   * Returns file content or empty string; uses project+branch+file names. The file is read by
+   * branchReader if it is not null, or from the head of branch in a repository of repoManager.
+   */
   public static String getRepoFile(
       PermissionBackend permissionBackend,
       Map<String, String> readFiles,
       GitRepositoryManager repoManager,
-      Repository repository,
-      ObjectId id,
+      BranchReader branchReader,
       String project,
       String branch,
       String file,
-      List<String> logs) {
+      Trace trace) {
     // 'file' must be an absolute path from the root of 'project'.
-    logs.add("getRepoFile:" + Parser.getFileKey(project, branch, file));
+    if (trace.isEnabled()) {
+      trace.log("getRepoFile:", Parser.getFileKey(project, branch, file));
+    }
     file = Util.gitRepoFilePath(file);
     String content = findReadFile(readFiles, project, file);
     if (content == null) {
-      if (!hasReadAccess(permissionBackend, project, branch, logs)) {
+      if (!hasReadAccess(permissionBackend, project, branch, trace)) {
         logger.atSevere().log("getRepoFile cannot read %s:%s", project, file);
         return ""; // treat as read error
       }
       content = "";
-      if ((id == null || repository == null) && repoManager != null) {
+      if (branchReader != null) {
+        content = branchReader.readFile(file, trace);
+      } else if (repoManager != null) {
         // create ObjectId from repoManager
-        try (Repository repo = repoManager.openRepository(Project.nameKey(project))) {
-          id = repo.resolve(branch);
+        try (Repository repo = openRepository(repoManager, Project.nameKey(project), trace)) {
+          ObjectId id = repo.resolve(branch);
           if (id != null) {
-            content = getFile(repo, id, file, logs);
+            try (BranchReader reader = new BranchReader(repo, project, id)) {
+              content = reader.readFile(file, trace);
+            }
           } else {
-            logs.add("getRepoFile not found branch " + branch);
+            trace.log("getRepoFile not found branch ", branch);
           }
         } catch (Exception e) {
           logger.atSevere().log("getRepoFile failed to find repository of project %s", project);
-          logException(logs, "getRepoFile", e);
+          logException(trace, "getRepoFile", e);
         }
-      } else if (id != null && repository != null) {
-        content = getFile(repository, id, file, logs);
       }
       saveReadFile(readFiles, project, file, content);
     }
     return content;
   }
 
-  /** Returns file content or empty string; uses Repository. */
-  private static String getFile(Repository repo, ObjectId id, String file, List<String> logs) {
-    String content = "";
-    try (RevWalk revWalk = new RevWalk(repo)) {
-      String header = "getFile:" + file;
-      RevTree tree = revWalk.parseCommit(id).getTree();
-      ObjectReader reader = revWalk.getObjectReader();
-      TreeWalk treeWalk = TreeWalk.forPath(reader, file, tree);
-      if (treeWalk != null) {
-        content = new String(reader.open(treeWalk.getObjectId(0)).getBytes(), UTF_8);
-        logs.add(header + ":(...)");
-      } else {
-        logs.add(header + " (NOT FOUND)");
-      }
-    } catch (Exception e) {
-      logger.atSevere().withCause(e).log("get file %s", file);
-      logException(logs, "getFile", e);
+  /** Opens a repository, timed as Trace.Phase.REPO_OPEN. */
+  private static Repository openRepository(
+      GitRepositoryManager repoManager, Project.NameKey project, Trace trace) throws IOException {
+    Trace.PhaseTimer timer = trace.time(Trace.Phase.REPO_OPEN);
+    try {
+      return repoManager.openRepository(project);
+    } finally {
+      timer.stop();
     }
-    return content;
   }
 
-  /** Adds a header + exception message to the logs. */
-  private static void logException(List<String> logs, String header, Exception e) {
-    logs.add(header + " Exception:" + e.getMessage());
+  /** Adds a header + exception message to the trace. */
+  static void logException(Trace trace, String header, Exception e) {
+    if (trace.isEnabled()) {
+      trace.log(header + " Exception:" + e.getMessage());
+    }
   }
 }
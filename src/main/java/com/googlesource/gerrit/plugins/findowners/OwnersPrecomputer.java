@@ -0,0 +1,198 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.gerrit.server.project.ProjectCache.illegalState;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.events.RevisionCreatedListener;
+import com.google.gerrit.server.account.AccountCache;
+import com.google.gerrit.server.account.Emails;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and caches the OwnersDb of a new patchset in background, before the first "Find Owners"
+ * request or submit rule evaluation of the patchset needs it. Its threads also refresh old cached
+ * OwnersDb for Cache.
+ */
+@Singleton
+class OwnersPrecomputer implements RevisionCreatedListener, LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final PluginConfigFactory configFactory;
+  private final ChangeData.Factory changeDataFactory;
+  private final AccountCache accountCache;
+  private final Emails emails;
+  private final GitRepositoryManager repoManager;
+  private final ProjectCache projectCache;
+  private final OneOffRequestContext requestContext;
+
+  // Bounded executor, null when OwnersDb is not cached or precomputation is disabled.
+  private volatile ExecutorService executor;
+
+  @Inject
+  OwnersPrecomputer(
+      PluginConfigFactory configFactory,
+      ChangeData.Factory changeDataFactory,
+      AccountCache accountCache,
+      Emails emails,
+      GitRepositoryManager repoManager,
+      ProjectCache projectCache,
+      OneOffRequestContext requestContext) {
+    this.configFactory = configFactory;
+    this.changeDataFactory = changeDataFactory;
+    this.accountCache = accountCache;
+    this.emails = emails;
+    this.repoManager = repoManager;
+    this.projectCache = projectCache;
+    this.requestContext = requestContext;
+  }
+
+  @Override
+  public void start() {
+    Config config = new Config(configFactory, null);
+    int threads = config.getPrecomputeThreads();
+    if (threads <= 0 || config.getMaxCacheAge() <= 0) {
+      return; // a precomputed OwnersDb would not be kept
+    }
+    logger.atInfo().log(
+        "Precompute owners with %d threads, queue size %d",
+        threads, config.getPrecomputeQueueSize());
+    // When the queue is full, new patchsets are not precomputed,
+    // and their OwnersDb are built on demand as before.
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, config.getPrecomputeQueueSize())),
+            new ThreadFactoryBuilder()
+                .setNameFormat(Config.PLUGIN_NAME + "-precompute-%d")
+                .setDaemon(true)
+                .build());
+    Cache.getInstance(config, repoManager).setPrecomputer(this);
+  }
+
+  @Override
+  public void stop() {
+    ExecutorService pool = executor;
+    executor = null;
+    if (pool != null) {
+      Cache.getInstance(new Config(configFactory, null), repoManager).setPrecomputer(null);
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Replaces the background threads of a started OwnersPrecomputer with newExecutor, e.g. a direct
+   * executor, so tests find the results of background tasks without waiting for them.
+   */
+  @VisibleForTesting
+  void setExecutor(ExecutorService newExecutor) {
+    ExecutorService pool = executor;
+    executor = newExecutor;
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  @Override
+  public void onRevisionCreated(RevisionCreatedListener.Event event) {
+    ChangeInfo change = event.getChange();
+    AccountInfo uploader = event.getWho();
+    if (executor == null || change == null || uploader == null || uploader._accountId == null) {
+      return;
+    }
+    Project.NameKey project = Project.nameKey(change.project);
+    Change.Id changeId = Change.id(change._number);
+    // Run in a request context of the uploader, who is usually the first one to ask for owners
+    // of the new patchset. The cached OwnersDb reads files without permission checks.
+    execute(Account.id(uploader._accountId), () -> precompute(project, changeId));
+  }
+
+  /**
+   * Runs task in background, in a request context of the given user. Returns false if the task is
+   * not accepted, when the queue is full or there is no background thread.
+   */
+  boolean execute(Account.Id user, Runnable task) {
+    ExecutorService pool = executor;
+    if (pool == null) {
+      return false;
+    }
+    try {
+      pool.execute(
+          () -> {
+            ManualRequestContext ctx = requestContext.openAs(user);
+            try {
+              task.run();
+            } catch (RuntimeException e) {
+              logger.atWarning().withCause(e).log("Fail to run background task");
+            } finally {
+              ctx.close();
+            }
+          });
+      return true;
+    } catch (RejectedExecutionException e) {
+      logger.atFine().atMostEvery(30, TimeUnit.SECONDS).log("Background queue is full");
+      return false;
+    }
+  }
+
+  private void precompute(Project.NameKey project, Change.Id changeId) {
+    try {
+      ChangeData changeData = changeDataFactory.create(project, changeId);
+      ProjectState projectState = projectCache.get(project).orElseThrow(illegalState(project));
+      // Cache.get makes the same key as later calls from Action and Checker,
+      // so they find this OwnersDb with all OWNERS files of the patchset already read.
+      Cache cache = Cache.getInstance(new Config(configFactory, null), repoManager);
+      Trace trace = Trace.timesOnly();
+      cache.get(
+          true,
+          null, /* permissionBackend */
+          projectState,
+          accountCache,
+          emails,
+          repoManager,
+          changeData,
+          trace);
+      cache.getMetrics().record(trace);
+      logger.atFiner().log("Precomputed owners of change %d", changeId.get());
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Fail to precompute owners of change %d", changeId.get());
+    }
+  }
+}
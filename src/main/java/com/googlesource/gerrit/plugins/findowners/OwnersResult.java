@@ -0,0 +1,30 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** Owners of a set of files, found in one pass by OwnersDb.findOwners. */
+class OwnersResult {
+  final Map<String, Set<String>> file2Owners = new HashMap<>(); // file to owner emails
+  final Map<String, OwnerWeights> ownerWeights = new HashMap<>(); // owner email to weights
+
+  /** Returns the number of owners of all files. */
+  int getNumOwners() {
+    return ownerWeights.size(); // every owner of a file has an OwnerWeights
+  }
+}
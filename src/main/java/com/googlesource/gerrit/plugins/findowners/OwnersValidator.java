@@ -369,12 +369,11 @@ public class OwnersValidator implements CommitValidationListener {
               null, /* permissionBackend */
               readFiles,
               repoManager,
-              null,
-              null,
+              null, /* branchReader */
               KPF[1],
               event.refName,
               repoFile,
-              new ArrayList<>());
+              Trace.NONE);
       if (isNullOrEmpty(content)) { // file not found or not readable.
         addVerboseMsg("cannot find file: " + key);
         // unchecked: including-file-path : line number : source line
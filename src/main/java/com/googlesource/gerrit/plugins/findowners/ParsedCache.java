@@ -0,0 +1,279 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cache of parsed OWNERS files, with key generated by Cache.makeParsedKey.
+ *
+ * <p>Parsed files are kept in memory. When a persistent directory is configured, they are also
+ * saved to that directory and loaded lazily after a server restart. Since the key contains the blob
+ * id of an OWNERS file, a saved file is valid for as long as it exists.
+ *
+ * <p>Files are saved by one background thread, so an OwnersDb build never waits for the disk. The
+ * same thread keeps the directory within maxSavedFiles files, removing the oldest files first.
+ */
+class ParsedCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  // Changed when the saved format of Parser.Result is changed.
+  private static final int VERSION = 1;
+
+  // Parsed files waiting to be saved; more are not saved when the disk is too slow.
+  private static final int SAVE_QUEUE_SIZE = 1000;
+
+  private static final Gson gson = new Gson();
+
+  private final com.google.common.cache.Cache<String, Parser.Result> cache;
+  private final Path dir; // null if parsed files are not saved
+  private final int maxSavedFiles;
+  private final ThreadPoolExecutor saver; // null if parsed files are not saved
+
+  // Names of saved files, oldest first, or null until the directory is scanned.
+  private Set<String> savedFiles; // guarded by this
+
+  /** A parsed file saved to the persistent directory. */
+  private static class SavedResult {
+    int version;
+    String key;
+    Parser.Result result;
+  }
+
+  ParsedCache(int maxSize, String persistentDir, int maxSavedFiles) {
+    cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    dir = (persistentDir == null || persistentDir.isEmpty()) ? null : Path.of(persistentDir);
+    this.maxSavedFiles = Math.max(1, maxSavedFiles);
+    if (dir == null) {
+      saver = null;
+      return;
+    }
+    saver =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(SAVE_QUEUE_SIZE),
+            new ThreadFactoryBuilder()
+                .setNameFormat(Config.PLUGIN_NAME + "-save-parsed-%d")
+                .setDaemon(true)
+                .build());
+    saver.execute(this::scan); // first task, before any save
+  }
+
+  /** Returns a parsed file from memory or the persistent directory, or null if not found. */
+  Parser.Result get(String key) {
+    Parser.Result result = cache.getIfPresent(key);
+    if (result == null && dir != null) {
+      result = load(key);
+      if (result != null) {
+        cache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  /** Returns a parsed file from memory, or null if not found; never reads the disk. */
+  Parser.Result getIfPresent(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  void put(String key, Parser.Result result) {
+    cache.put(key, result);
+    if (saver != null) {
+      try {
+        saver.execute(() -> save(key, result));
+      } catch (RejectedExecutionException e) {
+        logger.atFine().atMostEvery(30, TimeUnit.SECONDS).log("Parsed file save queue is full");
+      }
+    }
+  }
+
+  /** Removes parsed files in memory; saved files are still valid. */
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Stops saving parsed files, after files already passed to put are saved. */
+  void close() {
+    if (saver != null) {
+      saver.shutdown();
+    }
+  }
+
+  /** Waits until files passed to put are saved. */
+  @VisibleForTesting
+  void flush() throws InterruptedException, ExecutionException {
+    if (saver != null) {
+      saver.submit(() -> {}).get();
+    }
+  }
+
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  private static String getName(String key) {
+    return Hashing.sha256().hashString(key, UTF_8).toString();
+  }
+
+  private Path getPath(String name) {
+    return dir.resolve(name.substring(0, 2)).resolve(name.substring(2) + ".json");
+  }
+
+  /** Returns false only if the file of name is known to be not saved. */
+  private synchronized boolean maybeSaved(String name) {
+    return savedFiles == null || savedFiles.contains(name);
+  }
+
+  private synchronized void forget(String name) {
+    if (savedFiles != null) {
+      savedFiles.remove(name);
+    }
+  }
+
+  private Parser.Result load(String key) {
+    String name = getName(key);
+    if (!maybeSaved(name)) {
+      return null;
+    }
+    Path path = getPath(name);
+    try {
+      SavedResult saved = gson.fromJson(Files.readString(path, UTF_8), SavedResult.class);
+      if (saved != null && saved.version == VERSION && key.equals(saved.key)) {
+        return saved.result;
+      }
+      forget(name);
+      Files.deleteIfExists(path); // old format or hash collision
+    } catch (NoSuchFileException e) {
+      forget(name); // not saved, or removed as an old file
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Fail to load parsed file %s", path);
+    }
+    return null;
+  }
+
+  /** Finds saved files, and removes the oldest ones if there are too many. */
+  private void scan() {
+    Map<String, FileTime> times = new HashMap<>();
+    try (Stream<Path> paths = Files.walk(dir, 2)) {
+      for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+        Path path = it.next();
+        String fileName = path.getFileName().toString();
+        if (path.getNameCount() == dir.getNameCount() + 2) {
+          if (fileName.endsWith(".json")) {
+            String name =
+                path.getParent().getFileName() + fileName.substring(0, fileName.length() - 5);
+            times.put(name, Files.getLastModifiedTime(path));
+          } else if (fileName.endsWith(".tmp")) {
+            Files.deleteIfExists(path); // left by a server crash
+          }
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // nothing saved yet
+    } catch (IOException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Fail to scan parsed files in %s", dir);
+    }
+    List<String> names = new ArrayList<>(times.keySet());
+    names.sort(Comparator.comparing(times::get));
+    synchronized (this) {
+      savedFiles = new LinkedHashSet<>(names);
+    }
+    removeOldFiles();
+  }
+
+  private void save(String key, Parser.Result result) {
+    String name = getName(key);
+    if (maybeSaved(name)) {
+      return; // saved by another OwnersDb or before restart
+    }
+    Path path = getPath(name);
+    SavedResult saved = new SavedResult();
+    saved.version = VERSION;
+    saved.key = key;
+    saved.result = result;
+    Path tmp = null;
+    try {
+      Files.createDirectories(path.getParent());
+      // Write to a temporary file first, so a reader never finds a partial file.
+      tmp = Files.createTempFile(path.getParent(), "parsed", ".tmp");
+      Files.writeString(tmp, gson.toJson(saved), UTF_8);
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Fail to save parsed file %s", path);
+      try {
+        if (tmp != null) {
+          Files.deleteIfExists(tmp);
+        }
+      } catch (IOException ignored) {
+        // nothing else to do
+      }
+      return;
+    }
+    synchronized (this) {
+      savedFiles.add(name);
+    }
+    removeOldFiles();
+  }
+
+  private void removeOldFiles() {
+    List<String> oldFiles = new ArrayList<>();
+    synchronized (this) {
+      Iterator<String> it = savedFiles.iterator();
+      for (int n = savedFiles.size(); n > maxSavedFiles; n--) {
+        oldFiles.add(it.next());
+        it.remove();
+      }
+    }
+    for (String name : oldFiles) {
+      Path path = getPath(name);
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Fail to remove parsed file %s", path);
+      }
+    }
+  }
+}
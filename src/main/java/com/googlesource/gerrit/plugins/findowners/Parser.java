@@ -39,8 +39,8 @@ import java.util.regex.Pattern;
  *
  * <pre>
  *   Parser parser = new Parser(permissionBackend, readFiles, repoManager, project, branch, repoFilePath);
- *   String content = OwnersDb.getRepoFile(permissionBackend, readFiles, repoManager, null, null,
- *                                         project, branch, repoFilePath, logs);
+ *   String content = OwnersDb.getRepoFile(permissionBackend, readFiles, repoManager, null,
+ *                                         project, branch, repoFilePath, trace);
  *   Parser.Result result = parser.parseFile(dirPath, content);
  * </pre>
  *
@@ -106,9 +106,10 @@ class Parser {
   private final PermissionBackend permissionBackend;
   private final Map<String, String> readFiles;
   private final GitRepositoryManager repoManager;
+  private final BranchReader branchReader; // reads files of its project, or null
   private final String branch; // All owners files are read from the same branch.
   private final IncludeStack stack; // a stack of including files.
-  private final List<String> logs; // Keeps debug/trace messages.
+  private final Trace trace; // Keeps debug/trace messages.
   private final Map<String, Result> savedResults; // projectName:filePath => Parser.Result
 
   static class IncludeStack {
@@ -150,7 +151,7 @@ class Parser {
 
   // For simple unit tests without a repository.
   Parser(String project, String branch, String file) {
-    this(null, null, null, project, branch, file, new ArrayList<>());
+    this(null, null, null, project, branch, file, Trace.NONE);
   }
 
   Parser(
@@ -160,7 +161,7 @@ class Parser {
       String project,
       String branch,
       String file) {
-    this(permissionBackend, readFiles, repoManager, project, branch, file, new ArrayList<>());
+    this(permissionBackend, readFiles, repoManager, project, branch, file, Trace.NONE);
   }
 
   Parser(
@@ -170,12 +171,27 @@ class Parser {
       String project,
       String branch,
       String file,
-      List<String> logs) {
+      Trace trace) {
+    this(permissionBackend, readFiles, repoManager, null, project, branch, file, trace);
+  }
+
+  // Included files of branchReader.project are read by branchReader,
+  // other files are read from the branch head of repositories of repoManager.
+  Parser(
+      PermissionBackend permissionBackend,
+      Map<String, String> readFiles,
+      GitRepositoryManager repoManager,
+      BranchReader branchReader,
+      String project,
+      String branch,
+      String file,
+      Trace trace) {
     this.permissionBackend = permissionBackend;
     this.readFiles = readFiles;
     this.repoManager = repoManager;
+    this.branchReader = branchReader;
     this.branch = branch;
-    this.logs = logs;
+    this.trace = trace;
     stack = new IncludeStack(project, normalizedRepoDirFilePath(".", file));
     savedResults = new HashMap<>();
   }
@@ -250,6 +266,7 @@ class Parser {
     Set<String> errors; // unique error messages
     Map<String, Set<String>> owner2paths; // maps from owner email to pathGlobs
     Set<String> noParentGlobs; // per-file dirpath+glob with "set noparent"
+    Set<String> includedFiles; // projectName:filePath of all included files
 
     Result() {
       stopLooking = false;
@@ -257,6 +274,23 @@ class Parser {
       errors = new HashSet<>();
       owner2paths = new HashMap<>();
       noParentGlobs = new HashSet<>();
+      includedFiles = new HashSet<>();
+    }
+
+    /**
+     * Returns the parsed rules of this result without warnings and errors, which are reported when
+     * the file is parsed and not needed by an OwnersDb that keeps the result.
+     */
+    Result withoutMessages() {
+      if (warnings.isEmpty() && errors.isEmpty()) {
+        return this;
+      }
+      Result rules = new Result();
+      rules.stopLooking = stopLooking;
+      rules.owner2paths = owner2paths;
+      rules.noParentGlobs = noParentGlobs;
+      rules.includedFiles = includedFiles;
+      return rules;
     }
 
     void append(Result r, String dir, boolean addAll) {
@@ -265,6 +299,7 @@ class Parser {
       // only collects owner emails, not per-file or set noparent statement.
       warnings.addAll(r.warnings);
       errors.addAll(r.errors);
+      includedFiles.addAll(r.includedFiles);
       if (addAll) {
         stopLooking = stopLooking || r.stopLooking;
         for (String glob : r.noParentGlobs) {
@@ -311,7 +346,7 @@ class Parser {
     } catch (IOException e) {
       String msg = "Fail to normalized path " + dir + " / " + path;
       logger.atSevere().withCause(e).log("%s", msg);
-      logs.add(msg + ":" + e.getMessage());
+      trace.log(msg, ":", e.getMessage());
       return dir + "/" + path;
     }
   }
@@ -353,6 +388,7 @@ class Parser {
           ownerEmails = new ArrayList<>();
           Result r = new Result();
           includeFile(r, "", num, parsedKPF, false);
+          result.includedFiles.addAll(r.includedFiles);
           for (String key : r.owner2paths.keySet()) {
             for (String path : r.owner2paths.get(key)) {
               if (path.isEmpty()) {
@@ -393,42 +429,47 @@ class Parser {
     String project = parsedKPF[1];
     String file = parsedKPF[2];
     String includeKPF = keyword + ":" + getFileKey(project, file);
+    trace.add(Trace.Counter.INCLUDES, 1);
     // Like C/C++ #include, when f1 includes f2 with a relative file path,
     // use f1's directory, not 'dir', as the base for relative path.
     // 'dir' is the directory of OWNERS file, which might include f1 indirectly.
     String repoFile = normalizedRepoDirFilePath(Util.getParentDir(stack.currentFile()), file);
     if (stack.contains(project, repoFile)) {
-      logs.add("parseLine:errorRecursion:" + includeKPF);
+      trace.log("parseLine:errorRecursion:", includeKPF);
       result.errors.add(errorMsg(stack.currentFile(), num, "recursive include", includeKPF));
       return;
     }
     String savedResultKey = getFileKey(project, repoFile);
     Result includedFileResult = savedResults.get(savedResultKey);
     if (null != includedFileResult) {
-      logs.add("parseLine:useSaved:" + includeKPF);
+      trace.log("parseLine:useSaved:", includeKPF);
     } else {
+      if (!project.equals(stack.currentProject())) {
+        trace.add(Trace.Counter.OTHER_REPOS, 1); // read by getRepoFile from another repository
+      }
       stack.push(project, repoFile);
-      logs.add("parseLine:" + includeKPF);
+      trace.log("parseLine:", includeKPF);
       String content =
           OwnersDb.getRepoFile(
               permissionBackend,
               readFiles,
               repoManager,
-              null,
-              null,
+              (branchReader != null && branchReader.project.equals(project)) ? branchReader : null,
               project,
               branch,
               repoFile,
-              logs);
+              trace);
       if (content != null && !content.isEmpty()) {
+        trace.add(Trace.Counter.INCLUDED_FILES, 1);
         includedFileResult = parseFile("", content);
       } else {
-        logs.add("parseLine:" + keyword + ":()");
+        trace.log("parseLine:", keyword, ":()");
         includedFileResult = new Result();
       }
       stack.pop();
       savedResults.put(savedResultKey, includedFileResult);
     }
+    result.includedFiles.add(savedResultKey);
     result.append(includedFileResult, dir, addAll);
   }
 
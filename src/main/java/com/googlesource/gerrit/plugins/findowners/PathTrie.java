@@ -0,0 +1,170 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A trie of directories, with all owners information of each directory.
+ *
+ * <p>Directory paths are like ".", "./d1", "./d1/d2". Each node keeps only its own name, so long
+ * common prefixes of directory paths are stored once.
+ */
+class PathTrie {
+  /** One directory in the trie. */
+  static class Node {
+    final String name; // last component of the directory path
+    final Node parent; // null for the root directory "."
+    private Map<String, Node> children; // null if no child
+
+    Set<String> owners; // owner emails of the directory, or null
+    Map<String, Set<String>> globOwners; // per-file glob to owner emails, or null
+    Set<String> noParentGlobs; // per-file globs with "set noparent", or null
+    boolean stopLooking; // OWNERS has "set noparent"
+    boolean read; // OWNERS in this directory has been checked
+    Parser.Result result; // parsed OWNERS file without warnings and errors, or null
+    private GlobMatcher globMatcher; // compiled globOwners keys, or null
+
+    Node(String name, Node parent) {
+      this.name = name;
+      this.parent = parent;
+    }
+
+    /** Returns the directory path, like ".", "./d1", "./d1/d2". */
+    String getPath() {
+      if (parent == null) {
+        return name;
+      }
+      StringBuilder builder = new StringBuilder(name);
+      for (Node node = parent; node != null; node = node.parent) {
+        builder.insert(0, '/').insert(0, node.name);
+      }
+      return builder.toString();
+    }
+
+    void addOwner(String owner) {
+      if (owners == null) {
+        owners = new HashSet<>();
+      }
+      owners.add(owner);
+    }
+
+    /** Adds a per-file glob; a null owner adds the glob without any owner. */
+    void addGlobOwner(String glob, String owner) {
+      if (globOwners == null) {
+        globOwners = new HashMap<>();
+      }
+      globMatcher = null; // compile again when used
+      Set<String> set = globOwners.computeIfAbsent(glob, (String k) -> new HashSet<>());
+      if (owner != null) {
+        set.add(owner);
+      }
+    }
+
+    /** Returns matcher of all per-file globs, or null if there is no glob. */
+    GlobMatcher getGlobMatcher() {
+      if (globOwners == null) {
+        return null;
+      }
+      GlobMatcher matcher = globMatcher;
+      if (matcher == null) {
+        // It could be compiled more than once by concurrent readers, but all are the same.
+        matcher = new GlobMatcher(globOwners.keySet());
+        globMatcher = matcher;
+      }
+      return matcher;
+    }
+
+    void addNoParentGlob(String glob) {
+      if (noParentGlobs == null) {
+        noParentGlobs = new HashSet<>();
+      }
+      noParentGlobs.add(glob);
+      addGlobOwner(glob, null);
+    }
+  }
+
+  private final Node root = new Node(".", null);
+
+  /** Returns the node of dir, or null if it is not in the trie. */
+  Node find(String dir) {
+    Node node = root;
+    int end = getStart(dir);
+    while (node != null && end < dir.length()) {
+      int start = end;
+      end = nextSlash(dir, start);
+      if (end > start) {
+        node = (node.children == null) ? null : node.children.get(dir.substring(start, end));
+      }
+      end++;
+    }
+    return node;
+  }
+
+  /** Returns the node of dir, added with its missing parent directories. */
+  Node add(String dir) {
+    Node node = root;
+    int end = getStart(dir);
+    while (end < dir.length()) {
+      int start = end;
+      end = nextSlash(dir, start);
+      if (end > start) {
+        if (node.children == null) {
+          node.children = new HashMap<>();
+        }
+        Node parent = node;
+        node = node.children.computeIfAbsent(dir.substring(start, end), n -> new Node(n, parent));
+      }
+      end++;
+    }
+    return node;
+  }
+
+  /** Returns the node of the directory of a per-file glob, like "./d1/*.c". */
+  Node addParentOf(String path) {
+    return add(Util.getDirName(path));
+  }
+
+  /** Calls consumer with every node in the trie, parents before children. */
+  void forEach(Consumer<Node> consumer) {
+    Deque<Node> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      Node node = stack.pop();
+      consumer.accept(node);
+      if (node.children != null) {
+        node.children.values().forEach(stack::push);
+      }
+    }
+  }
+
+  private static int getStart(String dir) {
+    if (dir.equals(".")) {
+      return 1;
+    }
+    return dir.startsWith("./") ? 2 : 0;
+  }
+
+  private static int nextSlash(String dir, int start) {
+    int end = dir.indexOf('/', start);
+    return (end < 0) ? dir.length() : end;
+  }
+}
@@ -19,6 +19,7 @@ import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gson.annotations.SerializedName;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -79,5 +80,43 @@ public class RestResult {
     SortedMap<String, List<String>> path2owners;
     SortedMap<String, List<String>> owner2paths;
     List<String> logs;
+    Timing timing;
+  }
+
+  /** Times in milliseconds and counts of one request, from its Trace. */
+  static class Timing {
+    boolean fromCache; // found cached owners info
+    SortedMap<String, Double> millis = new TreeMap<>(); // time of each started phase
+    SortedMap<String, Long> counts = new TreeMap<>(); // files, bytes, emails, etc.
+    List<MatchTime> matches = new ArrayList<>(); // time to match each batch of files
+
+    Timing(Trace trace) {
+      fromCache = trace.isFromCache();
+      for (Trace.Phase phase : Trace.Phase.values()) {
+        if (trace.getCount(phase) > 0) {
+          millis.put(phase.name().toLowerCase(Locale.US), toMillis(trace.getNanos(phase)));
+        }
+      }
+      for (Trace.Counter counter : Trace.Counter.values()) {
+        counts.put(counter.name().toLowerCase(Locale.US), trace.getTotal(counter));
+      }
+      for (long[] match : trace.getMatches()) {
+        matches.add(new MatchTime((int) match[0], toMillis(match[1])));
+      }
+    }
+  }
+
+  static class MatchTime {
+    int files;
+    double millis;
+
+    MatchTime(int files, double millis) {
+      this.files = files;
+      this.millis = millis;
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return Math.round(nanos / 1000.0) / 1000.0; // keep microseconds
   }
 }
@@ -0,0 +1,91 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.server.query.change.ChangeData;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs one line for each slow build or use of an OwnersDb, with the counts and phase times of its
+ * Trace, to find OWNERS file layouts that are slow to read. Lines of each operation are logged at
+ * most once per slowLogInterval seconds, so they do not flood the log when every request is slow.
+ */
+final class SlowLog {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String BUILD = "build"; // Cache.get of a patchset
+  static final String APPROVAL = "approval"; // Checker.findApproval
+
+  private SlowLog() {}
+
+  /** Logs operation if it took at least thresholdMillis; a threshold not above 0 disables it. */
+  static void logIfSlow(
+      Config config,
+      String operation,
+      int thresholdMillis,
+      long nanos,
+      ChangeData changeData,
+      int files,
+      Trace trace) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    if (thresholdMillis <= 0 || millis < thresholdMillis) {
+      return;
+    }
+    int interval = Math.max(0, config.getSlowLogInterval());
+    String line = format(operation, millis, changeData, files, trace);
+    // Flogger limits the rate of each log statement, not of each message, and this version has
+    // no per-key limit. So each operation has its own log statement in a separate method, and
+    // frequent slow builds do not hide slow approvals.
+    if (operation.equals(APPROVAL)) {
+      logSlowApproval(interval, line);
+    } else {
+      logSlowBuild(interval, line);
+    }
+  }
+
+  private static void logSlowBuild(int interval, String line) {
+    logger.atWarning().atMostEvery(interval, TimeUnit.SECONDS).log("%s", line);
+  }
+
+  private static void logSlowApproval(int interval, String line) {
+    logger.atWarning().atMostEvery(interval, TimeUnit.SECONDS).log("%s", line);
+  }
+
+  /** Returns a line of space separated key=value pairs. */
+  static String format(
+      String operation, long millis, ChangeData changeData, int files, Trace trace) {
+    StringBuilder line = new StringBuilder("Slow find-owners ").append(operation);
+    line.append(" millis=").append(millis);
+    if (changeData != null) {
+      line.append(" change=").append(Config.getChangeId(changeData));
+      line.append(" project=").append(changeData.project().get());
+      line.append(" branch=").append(changeData.change().getDest().branch());
+    }
+    line.append(" files=").append(files);
+    line.append(" from_cache=").append(trace.isFromCache());
+    for (Trace.Counter counter : Trace.Counter.values()) {
+      line.append(' ').append(counter.name().toLowerCase(Locale.US));
+      line.append('=').append(trace.getTotal(counter));
+    }
+    line.append(" repo_opens=").append(trace.getCount(Trace.Phase.REPO_OPEN));
+    for (Trace.Phase phase : Trace.Phase.values()) {
+      line.append(' ').append(phase.name().toLowerCase(Locale.US)).append("_millis=");
+      line.append(TimeUnit.NANOSECONDS.toMillis(trace.getNanos(phase)));
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Debug messages of one request that builds or uses an OwnersDb. They are kept by the request, not
+ * by a cached OwnersDb, and copied into REST API debug messages.
+ *
+ * <p>When debug messages are not requested, Trace.NONE drops all messages. Callers pass constant
+ * strings or a prefix and a value, so no message is concatenated for Trace.NONE. A message that
+ * needs more work should be built only if isEnabled() is true.
+ *
+ * <p>A trace also keeps the time spent in each Phase and the total of each Counter, which are
+ * reported to Metrics and in REST API debug messages at the end of the request. The time of a phase
+ * does not include the time of other phases nested in it, e.g. the parse time does not include
+ * reading included files. Trace.NONE keeps no time, and Trace.timesOnly() keeps only the times and
+ * counts.
+ */
+class Trace {
+  /** A trace that drops all messages and times. */
+  static final Trace NONE = new Trace(false, null);
+
+  /** Phases of building and using an OwnersDb. */
+  enum Phase {
+    CACHE_LOOKUP, // find the branch revision and a cached OwnersDb, or build a new one
+    REPO_OPEN, // open a git repository
+    FILE_READ, // look up and read an OWNERS or included file
+    PARSE, // parse an OWNERS file
+    EMAIL_LOOKUP, // look up preferred emails of owners
+    MATCH // find owners of files
+  }
+
+  /** Counted work of building and using an OwnersDb. */
+  enum Counter {
+    DIRS, // directories searched for OWNERS files
+    OWNERS_FILES, // OWNERS files read and parsed
+    INCLUDES, // include and file: statements
+    INCLUDED_FILES, // files read and parsed by include and file: statements
+    OTHER_REPOS, // repositories of other projects opened to read included files
+    BYTES_READ, // bytes of files read from git
+    EMAILS // owner emails looked up
+  }
+
+  /** A running phase, ended by stop, usually in a finally block. */
+  interface PhaseTimer {
+    void stop();
+  }
+
+  private static final PhaseTimer NO_TIMER = () -> {};
+
+  /** Times and counts of one request, shared by all views of its trace. */
+  private static class Times {
+    final long[] phaseNanos = new long[Phase.values().length];
+    final int[] phaseCounts = new int[Phase.values().length];
+    final long[] totals = new long[Counter.values().length];
+    final List<long[]> matches = new ArrayList<>(); // number of files and nanoseconds
+    Phase current; // the running innermost phase, or null
+    long currentStart; // when current was started or resumed
+    boolean fromCache; // found a cached OwnersDb
+  }
+
+  private final boolean enabled;
+  private final List<String> logs; // trace/debug messages
+  private final List<String> errors; // error messages
+  private final Times times; // null if times are dropped
+
+  Trace() {
+    this(true, new Times());
+  }
+
+  private Trace(boolean enabled, Times times) {
+    this(
+        enabled,
+        enabled ? new ArrayList<>() : Collections.emptyList(),
+        enabled ? new ArrayList<>() : Collections.emptyList(),
+        times);
+  }
+
+  private Trace(boolean enabled, List<String> logs, List<String> errors, Times times) {
+    this.enabled = enabled;
+    this.logs = logs;
+    this.errors = errors;
+    this.times = times;
+  }
+
+  /** Returns a new trace that keeps phase times and counts but drops all messages. */
+  static Trace timesOnly() {
+    return new Trace(false, new Times());
+  }
+
+  /** Returns a view of this trace that keeps its times and counts but drops messages. */
+  Trace withoutLogs() {
+    return new Trace(false, times);
+  }
+
+  /** Returns a view of this trace that keeps its times and counts, with its own messages. */
+  Trace withNewLogs() {
+    return new Trace(enabled, times);
+  }
+
+  /** Adds messages of other, e.g. a view made by withNewLogs, to this trace. */
+  void addLogs(Trace other) {
+    if (enabled && other != this) {
+      logs.addAll(other.logs);
+      errors.addAll(other.errors);
+    }
+  }
+
+  /** Returns a view of this trace that keeps its messages but drops times and counts. */
+  Trace withoutTimes() {
+    return new Trace(enabled, logs, errors, null);
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  void log(String message) {
+    if (enabled) {
+      logs.add(message);
+    }
+  }
+
+  void log(String prefix, String value) {
+    if (enabled) {
+      logs.add(prefix + value);
+    }
+  }
+
+  void log(String prefix, String value, String suffix) {
+    if (enabled) {
+      logs.add(prefix + value + suffix);
+    }
+  }
+
+  void error(String message) {
+    if (enabled) {
+      errors.add(message);
+    }
+  }
+
+  List<String> getLogs() {
+    return logs;
+  }
+
+  List<String> getErrors() {
+    return errors;
+  }
+
+  /** Starts a phase; a running outer phase is paused until the returned timer is stopped. */
+  PhaseTimer time(Phase phase) {
+    Times t = times;
+    if (t == null) {
+      return NO_TIMER;
+    }
+    Phase outer = t.current;
+    long now = System.nanoTime();
+    if (outer != null) {
+      t.phaseNanos[outer.ordinal()] += now - t.currentStart;
+    }
+    t.current = phase;
+    t.currentStart = now;
+    t.phaseCounts[phase.ordinal()]++;
+    return () -> {
+      long end = System.nanoTime();
+      t.phaseNanos[phase.ordinal()] += end - t.currentStart;
+      t.current = outer;
+      t.currentStart = end;
+    };
+  }
+
+  /** Returns the total time of phase, in nanoseconds. */
+  long getNanos(Phase phase) {
+    return (times == null) ? 0 : times.phaseNanos[phase.ordinal()];
+  }
+
+  /** Returns how many times phase was started. */
+  int getCount(Phase phase) {
+    return (times == null) ? 0 : times.phaseCounts[phase.ordinal()];
+  }
+
+  void add(Counter counter, long value) {
+    if (times != null) {
+      times.totals[counter.ordinal()] += value;
+    }
+  }
+
+  long getTotal(Counter counter) {
+    return (times == null) ? 0 : times.totals[counter.ordinal()];
+  }
+
+  /** Adds the time to find owners of a batch of files. */
+  void addMatch(int files, long nanos) {
+    if (times != null) {
+      times.matches.add(new long[] {files, nanos});
+    }
+  }
+
+  /** Returns the number of files and nanoseconds of each batch of files matched. */
+  List<long[]> getMatches() {
+    return (times == null) ? Collections.emptyList() : times.matches;
+  }
+
+  void setFromCache() {
+    if (times != null) {
+      times.fromCache = true;
+    }
+  }
+
+  boolean isFromCache() {
+    return times != null && times.fromCache;
+  }
+}
@@ -133,6 +133,8 @@ public class ApiIT extends FindOwners {
     assertThat(result.dbgmsgs.branch).contains(changeInfo.branch);
     assertThat(result.dbgmsgs.path2owners).isEmpty();
     assertThat(result.dbgmsgs.owner2paths).isEmpty();
+    assertThat(result.dbgmsgs.timing.fromCache).isFalse();
+    assertThat(result.dbgmsgs.timing.matches).hasSize(1);
     assertThat(result.file2owners).isEmpty();
     assertThat(result.reviewers).isEmpty();
     assertThat(result.owners).isEmpty();
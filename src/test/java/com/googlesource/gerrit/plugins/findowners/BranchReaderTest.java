@@ -0,0 +1,131 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import java.util.Map;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test BranchReader class */
+@RunWith(JUnit4.class)
+public class BranchReaderTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  private static final Map<String, String> FILES =
+      ImmutableMap.of(
+          "OWNERS", "x@g\n",
+          "d1/OWNERS", "d1@g\n",
+          "d1/d2/f1", "f1@g\n",
+          "d3", "d3@g\n");
+
+  private Repository repo;
+  private ObjectId commitId;
+  private BranchReader reader;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("P"));
+    try (ObjectInserter inserter = repo.newObjectInserter()) {
+      DirCache dirCache = DirCache.newInCore();
+      DirCacheBuilder builder = dirCache.builder();
+      for (Map.Entry<String, String> file : FILES.entrySet()) {
+        DirCacheEntry entry = new DirCacheEntry(file.getKey());
+        entry.setFileMode(FileMode.REGULAR_FILE);
+        entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, file.getValue().getBytes(UTF_8)));
+        builder.add(entry);
+      }
+      builder.finish();
+      PersonIdent ident = new PersonIdent("Test", "test@g.com");
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(dirCache.writeTree(inserter));
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage("files");
+      commitId = inserter.insert(commit);
+      inserter.flush();
+    }
+    reader = new BranchReader(repo, "P", commitId);
+  }
+
+  @After
+  public void tearDown() {
+    reader.close();
+    repo.close();
+  }
+
+  @Test
+  public void readFileTest() {
+    Trace trace = new Trace();
+    for (Map.Entry<String, String> file : FILES.entrySet()) {
+      assertThat(reader.readFile(file.getKey(), trace)).isEqualTo(file.getValue());
+    }
+    // Read again with the saved directory trees.
+    assertThat(reader.readFile("d1/d2/f1", trace)).isEqualTo("f1@g\n");
+    assertThat(trace.getLogs()).contains("getFile:d1/d2/f1:(...)");
+    assertThat(trace.getTotal(Trace.Counter.BYTES_READ)).isEqualTo(24);
+  }
+
+  @Test
+  public void fileNotFoundTest() throws Exception {
+    Trace trace = new Trace();
+    assertThat(reader.readFile("d1/f2", trace)).isEmpty();
+    assertThat(reader.readFile("d4/OWNERS", trace)).isEmpty();
+    assertThat(trace.getLogs())
+        .containsExactly("getFile:d1/f2 (NOT FOUND)", "getFile:d4/OWNERS (NOT FOUND)")
+        .inOrder();
+    assertThat(reader.findFile("d1/d2")).isNull(); // a directory is not a file
+    assertThat(reader.findFile("d3/f1")).isNull(); // d3 is not a directory
+    assertThat(reader.findFile("d1/OWNERS")).isNotNull();
+  }
+
+  @Test
+  public void readBlobTest() throws Exception {
+    Trace trace = new Trace();
+    ObjectId id = reader.findFile("d1/OWNERS");
+    assertThat(reader.readFile(id, "d1/OWNERS", trace)).isEqualTo("d1@g\n");
+    assertThat(trace.getLogs()).containsExactly("getFile:d1/OWNERS:(...)");
+  }
+
+  @Test
+  public void putTreeTest() throws Exception {
+    // A tree saved from another walk is used to find files in it.
+    ObjectId f1 = reader.findFile("d1/d2/f1");
+    reader.putTree("d5", reader.getRootTree());
+    assertThat(reader.findFile("d5/d1/d2/f1")).isEqualTo(f1);
+    assertThat(reader.readFile("d5/OWNERS", Trace.NONE)).isEqualTo("x@g\n");
+  }
+}
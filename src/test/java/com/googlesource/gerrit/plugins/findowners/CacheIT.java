@@ -0,0 +1,349 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.server.project.ProjectCache.illegalState;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.config.GlobalPluginConfig;
+import com.google.gerrit.acceptance.config.GlobalPluginConfigs;
+import com.google.gerrit.entities.Project;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.Test;
+
+/** Test find-owners plugin features related to the OwnersDb cache. */
+@TestPlugin(name = "find-owners", sysModule = "com.googlesource.gerrit.plugins.findowners.Module")
+public class CacheIT extends FindOwners {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  @Test
+  public void branchSnapshotTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    addFile("2", "d2/OWNERS", "d2@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    PushOneCommit.Result c2 = createChange("c2", "d2/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(getOwnersResponse(c2)).contains("file2owners:{./d2/t.c:[d2@g]}");
+    // Both changes share the OwnersDb of the same branch head.
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+
+  private String getOwnersNoCacheResponse(PushOneCommit.Result change) throws Exception {
+    return filteredJson(
+        userRestSession.get("/changes/" + change.getChangeId() + "/owners?nocache=1"));
+  }
+
+  private String getKey(Project.NameKey p) {
+    return Cache.makeKey(
+        p.get(), "refs/heads/master", projectOperations.project(p).getHead("master"), "OWNERS");
+  }
+
+  @Test
+  public void sharedSnapshotTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    Project.NameKey pA = newProject("PSA");
+    Project.NameKey pB = newProject("PSB");
+    switchProject(pB);
+    addFile("1", "f1", "pB1@g\n");
+    switchProject(pA);
+    addFile("2", "OWNERS", "pA@g\n");
+    addFile("3", "d1/OWNERS", "include " + pB.get() + ":/f1\nper-file *.h=h@g\n");
+    addFile("4", "d2/OWNERS", "set noparent\nd2@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.h", "##");
+    PushOneCommit.Result c2 =
+        createChangeWithFiles("c2", ImmutableMap.of("d2/t.c", "##", "t.c", "##"));
+    String response1 = getOwnersResponse(c1);
+    OwnersDb db = cache.getIfPresent(getKey(pA));
+    assertThat(db).isNotNull();
+    String response2 = getOwnersResponse(c2);
+    // Both changes share one OwnersDb, which reads OWNERS files of c2 when c2 needs them.
+    assertThat(cache.getIfPresent(getKey(pA))).isSameInstanceAs(db);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(response1).contains("pB1@g");
+    assertThat(response1).contains("h@g");
+    assertThat(response2).contains("d2@g");
+    // Owners of each change are the same as from an unshared OwnersDb.
+    assertThat(response1).isEqualTo(getOwnersNoCacheResponse(c1));
+    assertThat(response2).isEqualTo(getOwnersNoCacheResponse(c2));
+    assertThat(cache.getIfPresent(getKey(pA))).isSameInstanceAs(db);
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void sharedReadAccessTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    Project.NameKey pA = newProject("PRA");
+    Project.NameKey pB = newProject("PRB");
+    switchProject(pB);
+    addFile("1", "f1", "pB1@g\n");
+    blockRead(pB); // now user cannot read pB
+    switchProject(pA);
+    addFile("2", "OWNERS", "pA@g\ninclude " + pB.get() + ":/f1\n");
+    PushOneCommit.Result c1 = createChange("c1", "t.c", "##");
+    // The submit rule has no permission backend; it builds the shared OwnersDb first.
+    OwnersDb db =
+        cache.get(
+            true,
+            null,
+            projectCache.get(pA).orElseThrow(illegalState(pA)),
+            accountCache,
+            emails,
+            repoManager,
+            c1.getChange());
+    assertThat(db.findOwners(c1.getChange().currentFilePaths()).file2Owners.get("./t.c"))
+        .containsExactly("pA@g", "pB1@g");
+    // The user cannot read the included file of the shared OwnersDb,
+    // and gets owners read with its own permissions.
+    String response = getOwnersResponse(c1);
+    assertThat(response).contains("file2owners:{./t.c:[pA@g]}");
+    assertThat(response).isEqualTo(getOwnersNoCacheResponse(c1));
+    // The shared OwnersDb is not changed by the user.
+    assertThat(cache.getIfPresent(getKey(pA))).isSameInstanceAs(db);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void incrementalUpdateTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    addFile("2", "d2/OWNERS", "d2@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    PushOneCommit.Result c2 = createChange("c2", "d2/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(getOwnersResponse(c2)).contains("file2owners:{./d2/t.c:[d2@g]}");
+    // Moving the branch head creates a new OwnersDb,
+    // which reads again only the changed d2/OWNERS.
+    addFile("3", "d2/OWNERS", "d3@g\n");
+    String response1 = getOwnersDebugResponse(c1);
+    assertThat(response1).contains("copyUnchangedFrom:");
+    assertThat(response1).contains("changedDirs:1/3,findOwnersFileIn:./d2,");
+    assertThat(response1).contains("timing:{fromCache:false,");
+    assertThat(response1).contains("owners_files:1}");
+    assertThat(response1).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(getOwnersResponse(c2)).contains("file2owners:{./d2/t.c:[d3@g]}");
+    // The OwnersDb of the old branch head was removed by the branch update.
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void memoryLimitTest() throws Exception {
+    // Limit the cache to 1 megabyte of OwnersDb instead of 10 OwnersDb.
+    Cache cache = getCache().init(100, 10, 1);
+    StringBuilder manyOwners = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      manyOwners.append("u").append(i).append("@g\n");
+    }
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    addFile("2", "d2/OWNERS", manyOwners.toString());
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(cache.size()).isEqualTo(1);
+    // The same OwnersDb grows after reading d2/OWNERS. Without background tasks,
+    // it is added again, weighed again, and removed as too large.
+    PushOneCommit.Result c2 = createChange("c2", "d2/t.c", "##");
+    assertThat(getOwnersResponse(c2)).contains("u4999@g");
+    assertThat(cache.size()).isEqualTo(0);
+    cache.init(0, 10);
+  }
+
+  @Test
+  @GlobalPluginConfig(pluginName = PLUGIN_NAME, name = "maxCacheAge", value = "100")
+  public void grownRebuildTest() throws Exception {
+    Cache cache = getCache().init(100, 10, 1);
+    runBackgroundTasksNow();
+    StringBuilder moreOwners = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      moreOwners.append("u").append(i).append("@g\n");
+    }
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    addFile("2", "d2/OWNERS", moreOwners.toString());
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    OwnersDb db = cache.getIfPresent(getKey(project));
+    assertThat(db).isNotNull();
+    // The grown OwnersDb is replaced by a copy built by a background task,
+    // which is weighed again and kept within the limit.
+    PushOneCommit.Result c2 = createChange("c2", "d2/t.c", "##");
+    assertThat(getOwnersResponse(c2)).contains("u499@g");
+    OwnersDb copy = cache.getIfPresent(getKey(project));
+    assertThat(copy).isNotNull();
+    assertThat(copy).isNotSameInstanceAs(db);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void parsedCacheTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    createBranch("BranchX");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    PushOneCommit.Result c2 = createChangeInBranch("BranchX", "c2", "d1/t.c", "##");
+    String response1 = getOwnersDebugResponse(c1);
+    String response2 = getOwnersDebugResponse(c2);
+    // The same d1/OWNERS blob in BranchX is parsed only once.
+    assertThat(response1).doesNotContain("useParsed:");
+    assertThat(response2).contains("useParsed:./d1/OWNERS,");
+    assertThat(response2).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(cache.size()).isEqualTo(2);
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void includedProjectUpdateTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    Project.NameKey pA = newProject("PCA");
+    Project.NameKey pB = newProject("PCB");
+    switchProject(pB);
+    addFile("1", "d1/f1", "pB1@g\n");
+    addFile("2", "d2/f2", "pB2@g\n");
+    switchProject(pA);
+    addFile("3", "OWNERS", "include " + pB.get() + ":/d1/f1\n");
+    PushOneCommit.Result c1 = createChange("c1", "t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./t.c:[pB1@g]}");
+    assertThat(cache.size()).isEqualTo(1);
+    // A file of project PCB not included by project PCA does not outdate its OwnersDb.
+    switchProject(pB);
+    addFile("4", "d2/f2", "pB3@g\n");
+    assertThat(cache.size()).isEqualTo(1);
+    // Updating an included file of project PCB removes the OwnersDb of project PCA.
+    addFile("5", "d1/f1", "pB4@g\n");
+    assertThat(cache.size()).isEqualTo(0);
+    switchProject(pA);
+    String response = getOwnersDebugResponse(c1);
+    assertThat(response).contains("copyUnchangedFrom:");
+    assertThat(response).contains("changedDirs:1/1,");
+    assertThat(response).contains("file2owners:{./t.c:[pB4@g]}");
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void unrelatedProjectUpdateTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    Project.NameKey pA = newProject("PUA");
+    Project.NameKey pB = newProject("PUB");
+    Project.NameKey pC = newProject("PUC");
+    switchProject(pB);
+    addFile("1", "f1", "pB1@g\n");
+    switchProject(pA);
+    addFile("2", "OWNERS", "include " + pB.get() + ":/f1\n");
+    PushOneCommit.Result c1 = createChange("c1", "t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./t.c:[pB1@g]}");
+    OwnersDb db = cache.getIfPresent(getKey(pA));
+    assertThat(db).isNotNull();
+    // An update of the same branch of a project not included by project PUA,
+    // even with a file of the same path, keeps its OwnersDb.
+    switchProject(pC);
+    addFile("3", "f1", "pC1@g\n");
+    assertThat(cache.getIfPresent(getKey(pA))).isSameInstanceAs(db);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+
+  /** Runs background tasks of the plugin synchronously, in the thread that starts them. */
+  private void runBackgroundTasksNow() {
+    plugin
+        .getSysInjector()
+        .getInstance(OwnersPrecomputer.class)
+        .setExecutor(MoreExecutors.newDirectExecutorService());
+  }
+
+  @Test
+  @GlobalPluginConfig(pluginName = PLUGIN_NAME, name = "maxCacheAge", value = "100")
+  public void precomputeTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    runBackgroundTasksNow();
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    // The OwnersDb of a new patchset is built by a background task, without any request.
+    OwnersDb db = cache.getIfPresent(getKey(project));
+    assertThat(db).isNotNull();
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(getOwnersDebugResponse(c1)).contains("timing:{fromCache:true,");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(cache.getIfPresent(getKey(project))).isSameInstanceAs(db);
+    cache.init(0, 10);
+  }
+
+  @Test
+  @GlobalPluginConfigs({
+    @GlobalPluginConfig(pluginName = PLUGIN_NAME, name = "maxCacheAge", value = "100"),
+    @GlobalPluginConfig(pluginName = PLUGIN_NAME, name = "cacheRefreshAge", value = "10")
+  })
+  public void refreshTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    AtomicLong nanos = new AtomicLong();
+    cache.setTicker(
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.get();
+          }
+        });
+    runBackgroundTasksNow();
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    OwnersDb db1 = cache.getIfPresent(getKey(project));
+    assertThat(db1).isNotNull();
+    // A young OwnersDb is not refreshed.
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(cache.getIfPresent(getKey(project))).isSameInstanceAs(db1);
+    // The old OwnersDb is returned, and a new one is built by a background task.
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    OwnersDb db2 = cache.getIfPresent(getKey(project));
+    assertThat(db2).isNotNull();
+    assertThat(db2).isNotSameInstanceAs(db1);
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    assertThat(cache.getIfPresent(getKey(project))).isSameInstanceAs(db2);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.setTicker(Ticker.systemTicker());
+    cache.init(0, 10);
+  }
+
+  @Test
+  public void debugTraceTest() throws Exception {
+    Cache cache = getCache().init(100, 10);
+    addFile("1", "d1/OWNERS", "d1@g\n");
+    PushOneCommit.Result c1 = createChange("c1", "d1/t.c", "##");
+    assertThat(getOwnersResponse(c1)).contains("file2owners:{./d1/t.c:[d1@g]}");
+    // The cached OwnersDb keeps no debug messages; they are regenerated for a debug request,
+    // by reading the same OWNERS files again with the cached parsed files.
+    String response = getOwnersDebugResponse(c1);
+    assertThat(response).contains("findOwnersFileIn:./d1,useParsed:./d1/OWNERS,");
+    assertThat(response).contains("file2owners:{./d1/t.c:[d1@g]}");
+    // Times and counts are of the cached OwnersDb, which does not read d1/OWNERS again.
+    assertThat(response).contains("timing:{fromCache:true,");
+    assertThat(response).contains("owners_files:0}");
+    assertThat(response).contains("matches:[{files:1,millis:");
+    assertThat(cache.size()).isEqualTo(1);
+    cache.init(0, 10);
+  }
+}
@@ -37,6 +37,7 @@ import com.google.gerrit.extensions.common.ChangeInput;
 import com.google.gerrit.server.account.Emails;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.inject.Inject;
+import java.util.Map;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -113,6 +114,19 @@ public abstract class FindOwners extends LightweightPluginDaemonTest {
     return c;
   }
 
+  protected PushOneCommit.Result createChangeWithFiles(String subject, Map<String, String> files)
+      throws Exception {
+    PushOneCommit push = pushFactory.create(admin.newIdent(), testRepo, subject, files);
+    return push.to("refs/for/master");
+  }
+
+  protected PushOneCommit.Result addFiles(String subject, Map<String, String> files)
+      throws Exception {
+    PushOneCommit.Result c = createChangeWithFiles(subject, files);
+    approveSubmit(c);
+    return c;
+  }
+
   protected void switchProject(Project.NameKey p) throws Exception {
     project = p;
     testRepo = cloneProject(project);
@@ -178,8 +192,7 @@ public abstract class FindOwners extends LightweightPluginDaemonTest {
             accountCache,
             emails,
             repoManager,
-            r.getChange(),
-            1);
+            r.getChange());
     Checker c =
         new Checker(accountCache, repoManager, emails, pluginConfig, null, r.getChange(), 1);
     return c.findApproval(db);
@@ -0,0 +1,110 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.common.truth.TruthJUnit.assume;
+
+import com.google.common.collect.Range;
+import com.google.common.flogger.FluentLogger;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+/**
+ * Test retained heap sizes of OwnersDb, as kept in Cache, of reference fixtures. Sizes are measured
+ * by walking the object graph with JOL, and must not exceed budgets recorded in this test.
+ */
+@RunWith(JUnit4.class)
+public class FootprintTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  // Budgets in bytes, about 10% above the sizes measured when they were recorded.
+  // When a change makes OwnersDb larger on purpose, update the budget with the logged size.
+  private static final long SMALL_BUDGET = 38_000;
+  private static final long TREE_BUDGET = 26_700_000;
+  private static final long PER_FILE_BUDGET = 2_070_000;
+
+  private final Config config = new Config(null, null); // shared by all OwnersDb
+
+  @Before
+  public void setUp() {
+    // Budgets are recorded on a 64-bit JVM with compressed references.
+    assume().that(VM.current().sizeOfField("java.lang.Object")).isEqualTo(4);
+  }
+
+  /**
+   * Returns an OwnersDb that has read OWNERS files of all directories of tree, and has found owners
+   * of changedFiles, like a cached OwnersDb used by many changes.
+   */
+  private OwnersDb newOwnersDb(OwnersCorpus.Tree tree, List<String> changedFiles, int emails) {
+    OwnersDb db = new OwnersDb(config, OwnersCorpus.PROJECT, OwnersCorpus.BRANCH, Config.OWNERS);
+    for (int i = 0; i < emails; i++) {
+      db.preferredEmails.put(OwnersCorpus.email(i), OwnersCorpus.email(i));
+    }
+    for (String dir : tree.dirs) {
+      // "./" to ".", "./d0/" to "./d0"
+      String content = tree.ownersFiles.getOrDefault(dir, "");
+      db.loadOwnersFile(dir.equals("./") ? "." : dir.substring(0, dir.length() - 1), content);
+    }
+    db.findOwners(changedFiles);
+    return db;
+  }
+
+  private void checkBudget(String fixture, OwnersDb db, long budget) {
+    long size =
+        GraphLayout.parseInstance(db).subtract(GraphLayout.parseInstance(config)).totalSize();
+    logger.atInfo().log(
+        "%s: retained=%d estimated=%d budget=%d", fixture, size, db.estimateSize(), budget);
+    assertWithMessage(fixture + " OwnersDb retained bytes").that(size).isAtMost(budget);
+    // Cache.init with maxMegabytes weighs OwnersDb by estimateSize, which should not be far off.
+    assertWithMessage(fixture + " OwnersDb estimated bytes")
+        .that(db.estimateSize())
+        .isIn(Range.closed(size / 2, size * 2));
+  }
+
+  @Test
+  public void smallRepoTest() {
+    OwnersCorpus corpus = new OwnersCorpus(0, 20);
+    OwnersCorpus.Tree tree = corpus.tree(2, 3, 1, 10); // 13 directories
+    checkBudget("small", newOwnersDb(tree, corpus.changedFiles(tree, 20), 20), SMALL_BUDGET);
+  }
+
+  @Test
+  public void largeTreeTest() {
+    OwnersCorpus corpus = new OwnersCorpus();
+    OwnersCorpus.Tree tree = corpus.tree(4, 10, 1, 10); // 11111 directories
+    checkBudget(
+        "tree",
+        newOwnersDb(tree, corpus.changedFiles(tree, 20000), OwnersCorpus.NUM_EMAILS),
+        TREE_BUDGET);
+  }
+
+  @Test
+  public void perFileTest() {
+    OwnersCorpus corpus = new OwnersCorpus();
+    OwnersCorpus.Tree tree = corpus.tree(3, 5, 20, 10); // 156 directories
+    checkBudget(
+        "perFile",
+        newOwnersDb(tree, corpus.changedFiles(tree, 2000), OwnersCorpus.NUM_EMAILS),
+        PER_FILE_BUDGET);
+  }
+}
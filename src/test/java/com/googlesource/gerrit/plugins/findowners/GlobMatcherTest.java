@@ -0,0 +1,47 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test GlobMatcher class */
+@RunWith(JUnit4.class)
+public class GlobMatcherTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  @Test
+  public void matchesTest() {
+    GlobMatcher matcher =
+        new GlobMatcher(ImmutableList.of("./d1/*.c", "./d1/t*", "./d1/*.h", "./d1/*"));
+    assertThat(matcher.size()).isEqualTo(4);
+    assertThat(matcher.getGlob(1)).isEqualTo("./d1/t*");
+    assertThat(matcher.matches(0, "./d1", "t.c")).isTrue();
+    assertThat(matcher.matches(1, "./d1", "t.c")).isTrue();
+    assertThat(matcher.matches(2, "./d1", "t.c")).isFalse();
+    assertThat(matcher.matches(3, "./d1", "t.c")).isTrue();
+    assertThat(matcher.matches(0, "./d2", "t.c")).isFalse();
+    // Redundant '/' are removed, like in a java.nio.file.Path.
+    assertThat(matcher.matches(0, "./d1", "/t.c")).isTrue();
+    assertThat(matcher.matches(0, "./d1/", "t.c")).isTrue();
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.flogger.FluentLogger;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.regex.PatternSyntaxException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test Glob class */
+@RunWith(JUnit4.class)
+public class GlobTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  private static final String[] GLOBS = {
+    "./d1/*.c",
+    "./d1/*",
+    "./d1/**",
+    "./d1/?.c",
+    "./d1/[ab]*.c",
+    "./d1/[!ab]*.c",
+    "./d1/[a-c].c",
+    "./d1/[-a].c",
+    "./d1/[a-].c",
+    "./d1/[^a].c",
+    "./d1/{x,y}.c",
+    "./d1/*.{c,h}",
+    "./d1/{,a}b",
+    "./d1/\\*.c",
+    "./d1/x}.c",
+    "./d1/sub/*.c",
+    "./d1/*/*.c",
+    "**.c",
+    "*.c",
+  };
+
+  private static final String[] PATHS = {
+    "./d1/a.c", "./d1/b.h", "./d1/c.c", "./d1/x.c", "./d1/y.c", "./d1/xy.c", "./d1/-.c",
+    "./d1/^.c", "./d1/*.c", "./d1/x}.c", "./d1/b", "./d1/ab", "./d1/sub/a.c", "./d1/abc.c",
+    "./d2/a.c", "a.c", "./d1/]", "./d1/[]",
+  };
+
+  @Test
+  public void sameAsPathMatcherTest() {
+    for (String glob : GLOBS) {
+      Glob compiled = Glob.compile(glob);
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+      for (String path : PATHS) {
+        assertWithMessage("%s matches %s", glob, path)
+            .that(compiled.matches(path))
+            .isEqualTo(matcher.matches(Paths.get(path)));
+      }
+    }
+  }
+
+  @Test
+  public void dirAndBaseNameTest() {
+    Glob glob = Glob.compile("./d1/{a,b}*.c");
+    assertThat(glob.matches("./d1", "a.c")).isTrue();
+    assertThat(glob.matches("./d1", "bx.c")).isTrue();
+    assertThat(glob.matches("./d1", "c.c")).isFalse();
+    assertThat(glob.matches("./d2", "a.c")).isFalse();
+    assertThat(Glob.compile("**").matches("./d1", "a.c")).isTrue();
+    assertThat(Glob.compile("./*/a.c").matches("./d1", "a.c")).isTrue();
+    assertThat(Glob.compile("./*a.c").matches("./d1", "a.c")).isFalse();
+  }
+
+  @Test
+  public void syntaxErrorTest() {
+    String[] errors = {"./d1/\\", "./d1/[a", "./d1/[a/b]", "./d1/[c-a]", "./d1/{a,{b}}", "./d1/{a"};
+    for (String glob : errors) {
+      assertThrows(PatternSyntaxException.class, () -> Glob.compile(glob));
+      assertThrows(
+          PatternSyntaxException.class,
+          () -> FileSystems.getDefault().getPathMatcher("glob:" + glob));
+    }
+  }
+}
@@ -68,7 +68,6 @@ public class IncludeIT extends FindOwners {
             + concat("parseLine:include:", projectName, ":./d1/d2/../../f2,")
             + getRepoFileLog(projectName + ":refs/heads/master:f2", "f2(NOTFOUND)")
             + "parseLine:include:()," // missing file is treated as empty
-            + "countNumOwners,"
             + "findOwners,"
             + "checkFile:./t.c,"
             + "checkDir:.,"
@@ -117,7 +116,6 @@ public class IncludeIT extends FindOwners {
             + "parseLine:include:()," // P1/P2 is still not found
             + concat("parseLine:include:", projectName, ":./d1/d2/../../f2,")
             + getRepoFileLog(projectName + ":refs/heads/master:f2", "f2:(...)")
-            + "countNumOwners,"
             + "findOwners,"
             + "checkFile:./t.c,"
             + "checkDir:.,"
@@ -254,7 +252,6 @@ public class IncludeIT extends FindOwners {
             + concat("parseLine:include:", projectName, ":/f4,")
             + getRepoFileLog(projectName + ":refs/heads/master:f4", "f4:(...)")
             + concat("parseLine:errorRecursion:include:", projectName, ":d2/../f2,")
-            + "countNumOwners,"
             + "findOwners,"
             + "checkFile:./t.c,"
             + "checkDir:.,"
@@ -316,7 +313,6 @@ public class IncludeIT extends FindOwners {
             + concat("parseLine:useSaved:include:", projectName, ":/d4/f4,")
             + "findOwnersFileIn:.,"
             + getRepoFileLog(projectName + ":refs/heads/master:./OWNERS", "OWNERS(NOTFOUND)")
-            + "countNumOwners,"
             + "findOwners,"
             + "checkFile:./d6/OWNERS,"
             + "checkDir:./d6,"
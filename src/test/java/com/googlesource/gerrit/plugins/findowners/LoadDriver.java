@@ -0,0 +1,121 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import com.google.common.flogger.FluentLogger;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Sends requests from many threads, and reports throughput and latency percentiles. */
+final class LoadDriver {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** One request; n is the number of the request, from 0. */
+  interface Request {
+    void send(int n) throws Exception;
+  }
+
+  /** Throughput and latency of all requests of one run. */
+  static class Report {
+    final String name;
+    final int threads;
+    final int errors; // requests that threw an exception
+    final long nanos; // from the first request to the end of the last one
+    final long[] latencies; // nanoseconds of each request, sorted
+
+    Report(String name, int threads, int errors, long nanos, long[] latencies) {
+      this.name = name;
+      this.threads = threads;
+      this.errors = errors;
+      this.nanos = nanos;
+      this.latencies = latencies;
+    }
+
+    /** Returns requests per second. */
+    double throughput() {
+      return (nanos == 0) ? 0 : latencies.length * 1e9 / nanos;
+    }
+
+    /** Returns the latency in nanoseconds that percent of the requests do not exceed. */
+    long percentile(double percent) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int i = (int) Math.ceil(percent / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(i, latencies.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s requests=%d threads=%d errors=%d requests_per_second=%.1f"
+              + " p50_millis=%.2f p90_millis=%.2f p99_millis=%.2f max_millis=%.2f",
+          name,
+          latencies.length,
+          threads,
+          errors,
+          throughput(),
+          millis(percentile(50)),
+          millis(percentile(90)),
+          millis(percentile(99)),
+          millis(percentile(100)));
+    }
+  }
+
+  private LoadDriver() {}
+
+  /** Sends requests number 0 to requests - 1 from the given number of threads. */
+  static Report run(String name, int threads, int requests, Request request)
+      throws InterruptedException {
+    long[] latencies = new long[requests];
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger errors = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      executor.execute(
+          () -> {
+            for (int n = next.getAndIncrement(); n < requests; n = next.getAndIncrement()) {
+              long begin = System.nanoTime();
+              try {
+                request.send(n);
+              } catch (Exception e) {
+                if (errors.getAndIncrement() == 0) {
+                  logger.atWarning().withCause(e).log("First failed %s request", name);
+                }
+              }
+              latencies[n] = System.nanoTime() - begin;
+            }
+          });
+    }
+    executor.shutdown();
+    if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+      executor.shutdownNow();
+      throw new InterruptedException(name + " requests did not finish in one hour");
+    }
+    long nanos = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    return new Report(name, threads, errors.get(), nanos, latencies);
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.acceptance.RestSession;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.testsuite.account.AccountOperations;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.common.TestSubmitRuleInput;
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Load test of a generated Monorepo. Many threads call the /owners REST API and the
+ * check_owner_approval predicate of the submit rule, and the throughput, latency percentiles and
+ * cache hit ratio of each are logged. It is not run with other tests; see build.md.
+ *
+ * <p>Besides the sizes of Monorepo, system properties "findowners.load.threads" and
+ * "findowners.load.requests" set the number of threads and requests of each run.
+ */
+@TestPlugin(name = "find-owners", sysModule = "com.googlesource.gerrit.plugins.findowners.Module")
+public class LoadIT extends FindOwners {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  @Inject private AccountOperations accountOperations;
+
+  // A submit rule that only calls check_owner_approval, without project rules.
+  private static final String SUBMIT_RULE = "submit_rule(S) :- find_owners:submit_rule(S).";
+
+  private final int threads = Integer.getInteger(Monorepo.PROPERTY_PREFIX + "threads", 8);
+  private final int requests = Integer.getInteger(Monorepo.PROPERTY_PREFIX + "requests", 400);
+
+  /** Creates accounts, OWNERS files and changes of monorepo in project. */
+  private List<PushOneCommit.Result> createMonorepo(Monorepo monorepo) throws Exception {
+    Project.NameKey main = project;
+    Project.NameKey common = newProject("LoadCommon");
+    monorepo.generate(common.get());
+    for (int i = 0; i < monorepo.accounts; i++) {
+      accountOperations.newAccount().preferredEmail(OwnersCorpus.email(i)).create();
+    }
+    if (!monorepo.common.isEmpty()) {
+      switchProject(common);
+      addFiles("common files", monorepo.common);
+      switchProject(main);
+    }
+    addFiles("OWNERS files", monorepo.owners);
+    RevCommit head = projectOperations.project(project).getHead("master");
+    List<PushOneCommit.Result> changes = new ArrayList<>();
+    for (int i = 0; i < monorepo.changedFiles.size(); i++) {
+      testRepo.reset(head); // all changes have the same parent
+      changes.add(createChangeWithFiles("change " + i, monorepo.changedFiles.get(i)));
+    }
+    return changes;
+  }
+
+  private LoadDriver.Report run(String name, LoadDriver.Request request) throws Exception {
+    Cache cache = getCache();
+    CacheStats before = cache.stats();
+    LoadDriver.Report report = LoadDriver.run(name, threads, requests, request);
+    CacheStats stats = cache.stats().minus(before);
+    logger.atInfo().log(
+        "%s cache_hit_ratio=%s",
+        report, String.format(Locale.US, "%.3f", stats.requestCount() == 0 ? 0 : stats.hitRate()));
+    assertThat(report.errors).isEqualTo(0);
+    assertThat(stats.hitCount()).isGreaterThan(0L); // all changes share one branch snapshot
+    return report;
+  }
+
+  @Test
+  public void loadTest() throws Exception {
+    Cache cache = getCache().init(1000, 1000);
+    Monorepo monorepo = Monorepo.fromSystemProperties();
+    List<PushOneCommit.Result> changes = createMonorepo(monorepo);
+    logger.atInfo().log("Monorepo %s", monorepo);
+    // RestSession of every thread, since one session has a small connection pool.
+    ThreadLocal<RestSession> userSession =
+        ThreadLocal.withInitial(() -> new RestSession(server, user));
+    ThreadLocal<RestSession> adminSession =
+        ThreadLocal.withInitial(() -> new RestSession(server, admin));
+    run(
+        "owners",
+        n -> {
+          PushOneCommit.Result change = changes.get(n % changes.size());
+          RestResponse response =
+              userSession.get().get("/changes/" + change.getChangeId() + "/owners");
+          response.assertOK();
+          response.consume();
+        });
+    TestSubmitRuleInput input = new TestSubmitRuleInput();
+    input.rule = SUBMIT_RULE;
+    input.filters = TestSubmitRuleInput.Filters.SKIP;
+    run(
+        "check_owner_approval",
+        n -> {
+          PushOneCommit.Result change = changes.get(n % changes.size());
+          RestResponse response =
+              adminSession
+                  .get()
+                  .post(
+                      "/changes/" + change.getChangeId() + "/revisions/current/test.submit_rule",
+                      input);
+          response.assertOK();
+          response.consume();
+        });
+    cache.init(0, 10);
+  }
+}
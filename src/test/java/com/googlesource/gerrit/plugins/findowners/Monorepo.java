@@ -0,0 +1,111 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Files of a generated monorepo for load tests: OWNERS files of a directory tree in the main
+ * project, which include files of a common project, and changes of many files in the tree. Every
+ * owner email is email(0) to email(accounts - 1) of OwnersCorpus.
+ *
+ * <p>Sizes are the fields below; fromSystemProperties reads them from the system properties of the
+ * same name with prefix "findowners.load.", e.g. -Dfindowners.load.depth=5.
+ */
+class Monorepo {
+  static final String PROPERTY_PREFIX = "findowners.load.";
+
+  int depth = 3; // depth of directories below the root
+  int fanOut = 4; // subdirectories of each directory
+  int ownersPercent = 70; // directories with an OWNERS file
+  int globsPerDir = 2; // per-file lines in each OWNERS file
+  int noParentPercent = 10; // OWNERS files with "set noparent"
+  int includePercent = 20; // OWNERS files that include a file of the common project
+  int commonFiles = 10; // files in the common project
+  int accounts = 50; // owner emails, each with an account
+  int changes = 20; // changes to find owners of
+  int filesPerChange = 50; // changed files of each change
+  long seed = 0;
+
+  final Map<String, String> common = new HashMap<>(); // files of the common project
+  final Map<String, String> owners = new HashMap<>(); // OWNERS files of the main project
+  final List<Map<String, String>> changedFiles = new ArrayList<>(); // files of each change
+
+  static Monorepo fromSystemProperties() {
+    Monorepo m = new Monorepo();
+    m.depth = Integer.getInteger(PROPERTY_PREFIX + "depth", m.depth);
+    m.fanOut = Integer.getInteger(PROPERTY_PREFIX + "fanOut", m.fanOut);
+    m.ownersPercent = Integer.getInteger(PROPERTY_PREFIX + "ownersPercent", m.ownersPercent);
+    m.globsPerDir = Integer.getInteger(PROPERTY_PREFIX + "globsPerDir", m.globsPerDir);
+    m.noParentPercent = Integer.getInteger(PROPERTY_PREFIX + "noParentPercent", m.noParentPercent);
+    m.includePercent = Integer.getInteger(PROPERTY_PREFIX + "includePercent", m.includePercent);
+    m.commonFiles = Integer.getInteger(PROPERTY_PREFIX + "commonFiles", m.commonFiles);
+    m.accounts = Integer.getInteger(PROPERTY_PREFIX + "accounts", m.accounts);
+    m.changes = Integer.getInteger(PROPERTY_PREFIX + "changes", m.changes);
+    m.filesPerChange = Integer.getInteger(PROPERTY_PREFIX + "filesPerChange", m.filesPerChange);
+    m.seed = Long.getLong(PROPERTY_PREFIX + "seed", m.seed);
+    return m;
+  }
+
+  /** Generates all files; commonProject is the name of the common project. */
+  Monorepo generate(String commonProject) {
+    OwnersCorpus corpus = new OwnersCorpus(seed, accounts);
+    Random random = new Random(seed);
+    for (int i = 0; i < commonFiles; i++) {
+      common.put("common/OWNERS_" + i, corpus.email() + '\n' + corpus.email() + '\n');
+    }
+    OwnersCorpus.Tree tree =
+        corpus.tree(depth, fanOut, ownersPercent, globsPerDir, noParentPercent);
+    for (Map.Entry<String, String> entry : tree.ownersFiles.entrySet()) {
+      String content = entry.getValue();
+      if (commonFiles > 0 && random.nextInt(100) < includePercent) {
+        content +=
+            "include " + commonProject + ":/common/OWNERS_" + random.nextInt(commonFiles) + '\n';
+      }
+      owners.put(entry.getKey().substring(2) + Config.OWNERS, content); // remove "./"
+    }
+    for (int i = 0; i < changes; i++) {
+      Map<String, String> files = new HashMap<>();
+      for (String file : corpus.changedFiles(tree, filesPerChange)) {
+        files.put(file, "// change " + i + '\n');
+      }
+      changedFiles.add(files);
+    }
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "depth=%d fanOut=%d ownersPercent=%d globsPerDir=%d noParentPercent=%d includePercent=%d"
+            + " commonFiles=%d accounts=%d changes=%d filesPerChange=%d seed=%d owners_files=%d",
+        depth,
+        fanOut,
+        ownersPercent,
+        globsPerDir,
+        noParentPercent,
+        includePercent,
+        commonFiles,
+        accounts,
+        changes,
+        filesPerChange,
+        seed,
+        owners.size());
+  }
+}
@@ -0,0 +1,257 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Synthetic OWNERS file contents for benchmarks. The same seed always generates the same files, so
+ * results of different runs and parser versions can be compared.
+ */
+final class OwnersCorpus {
+  static final String PROJECT = "P";
+  static final String BRANCH = "master";
+
+  static final int NUM_EMAILS = 1000; // default number of different owner emails
+
+  private static final String[] EXTENSIONS = {"c", "h", "cc", "java", "py", "md", "txt", "xml"};
+
+  /** Content of the root OWNERS file and of all files it includes directly or indirectly. */
+  static class Files {
+    final String content;
+    final Map<String, String> includedFiles; // key is Parser.getFileKey(project, file)
+
+    Files(String content, Map<String, String> includedFiles) {
+      this.content = content;
+      this.includedFiles = includedFiles;
+    }
+
+    /** Returns a copy of includedFiles that can be given to a new Parser as its readFiles. */
+    Map<String, String> newReadFiles() {
+      return new HashMap<>(includedFiles);
+    }
+  }
+
+  /** OWNERS files of a generated directory tree. */
+  static class Tree {
+    final Map<String, String> ownersFiles = new TreeMap<>(); // directory to OWNERS content
+    final List<String> dirs = new ArrayList<>(); // all directories, "./", "./d0/", "./d0/d1/", ...
+  }
+
+  private final Random random;
+  private final int numEmails; // generated emails are email(0) to email(numEmails - 1)
+
+  OwnersCorpus(long seed, int numEmails) {
+    random = new Random(seed);
+    this.numEmails = numEmails;
+  }
+
+  OwnersCorpus() {
+    this(0, NUM_EMAILS);
+  }
+
+  static String email(int n) {
+    return "u" + n + "@g.com";
+  }
+
+  String email() {
+    return email(random.nextInt(numEmails));
+  }
+
+  String glob() {
+    switch (random.nextInt(3)) {
+      case 0:
+        return "*." + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+      case 1:
+        return "f" + random.nextInt(100) + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+      default:
+        return "[abc]" + random.nextInt(10) + ".*";
+    }
+  }
+
+  String perFileLine() {
+    StringBuilder line = new StringBuilder("per-file ").append(glob());
+    for (int n = random.nextInt(3); n > 0; n--) {
+      line.append(',').append(glob());
+    }
+    if (random.nextInt(10) == 0) {
+      return line.append(" = set noparent").toString();
+    }
+    line.append(" = ").append(email());
+    for (int n = random.nextInt(3); n > 0; n--) {
+      line.append(", ").append(email());
+    }
+    return line.toString();
+  }
+
+  String commentLine() {
+    return random.nextBoolean()
+        ? "# Owners of directory d" + random.nextInt(100) + " and its subdirectories."
+        : "  # " + email() + " is on leave until next quarter";
+  }
+
+  /** A typical OWNERS file of a few owners and per-file lines. */
+  Files small() {
+    StringBuilder content = new StringBuilder();
+    content.append("# Owners of this directory.\n");
+    for (int i = 0; i < 4; i++) {
+      content.append(email()).append('\n');
+    }
+    content.append('\n');
+    content.append(perFileLine()).append('\n');
+    content.append(perFileLine()).append('\n');
+    return new Files(content.toString(), new HashMap<>());
+  }
+
+  /** A large file of owner emails, per-file and comment lines in a realistic mix. */
+  Files generated(int lines) {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      int kind = random.nextInt(10);
+      if (kind < 5) {
+        content.append(email());
+      } else if (kind < 8) {
+        content.append(perFileLine());
+      } else if (kind < 9) {
+        content.append(commentLine());
+      } else if (i > 0 && random.nextInt(100) == 0) {
+        content.append("set noparent");
+      }
+      content.append('\n');
+    }
+    return new Files(content.toString(), new HashMap<>());
+  }
+
+  /** A file of only per-file lines, each with several globs and owners. */
+  Files perFile(int lines) {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      content.append(perFileLine()).append('\n');
+    }
+    return new Files(content.toString(), new HashMap<>());
+  }
+
+  /** A file of mostly comments and empty lines, with a few owners. */
+  Files commentHeavy(int lines) {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      int kind = random.nextInt(10);
+      if (kind < 7) {
+        content.append(commentLine());
+      } else if (kind == 9) {
+        content.append(email()).append("  # reviewer");
+      } // else an empty line
+      content.append('\n');
+    }
+    return new Files(content.toString(), new HashMap<>());
+  }
+
+  /**
+   * A root file that includes a chain of depth files; each one has a few owners, a per-file line
+   * with a "file:" directive to a shared file, and includes the next one.
+   */
+  Files includeChain(int depth) {
+    Map<String, String> includedFiles = new HashMap<>();
+    includedFiles.put(Parser.getFileKey(PROJECT, "common/OWNERS"), email() + '\n' + email() + '\n');
+    for (int i = 1; i <= depth; i++) {
+      StringBuilder content = new StringBuilder();
+      content.append("# level ").append(i).append('\n');
+      content.append(email()).append('\n');
+      content.append(email()).append('\n');
+      content.append("per-file ").append(glob()).append(" = file: /common/OWNERS\n");
+      if (i < depth) {
+        content.append("include ../d").append(i + 1).append("/OWNERS\n");
+      }
+      includedFiles.put(Parser.getFileKey(PROJECT, "inc/d" + i + "/OWNERS"), content.toString());
+    }
+    String root = email() + "\ninclude /inc/d1/OWNERS\n" + perFileLine() + '\n';
+    return new Files(root, includedFiles);
+  }
+
+  /** A tree where 70% of the directories have an OWNERS file. */
+  Tree tree(int depth, int fanOut, int globsPerDir, int noParentPercent) {
+    return tree(depth, fanOut, 70, globsPerDir, noParentPercent);
+  }
+
+  /**
+   * A directory tree of the given depth below the root, with fanOut subdirectories in each
+   * directory. The root and ownersPercent of the other directories have an OWNERS file of a few
+   * owners and globsPerDir per-file lines; noParentPercent of them also have "set noparent".
+   */
+  Tree tree(int depth, int fanOut, int ownersPercent, int globsPerDir, int noParentPercent) {
+    Tree tree = new Tree();
+    addDir(tree, "./", depth, fanOut, ownersPercent, globsPerDir, noParentPercent);
+    return tree;
+  }
+
+  private void addDir(
+      Tree tree,
+      String dir,
+      int depth,
+      int fanOut,
+      int ownersPercent,
+      int globsPerDir,
+      int noParentPercent) {
+    tree.dirs.add(dir);
+    // The root always has owners; other directories without OWNERS inherit from their parent.
+    if (dir.equals("./") || random.nextInt(100) < ownersPercent) {
+      StringBuilder content = new StringBuilder();
+      if (!dir.equals("./") && random.nextInt(100) < noParentPercent) {
+        content.append("set noparent\n");
+      }
+      for (int n = 1 + random.nextInt(3); n > 0; n--) {
+        content.append(email()).append('\n');
+      }
+      for (int n = 0; n < globsPerDir; n++) {
+        content.append("per-file ").append(glob()).append(" = ");
+        content.append(random.nextInt(10) == 0 ? "set noparent" : email()).append('\n');
+      }
+      tree.ownersFiles.put(dir, content.toString());
+    }
+    if (depth > 0) {
+      for (int i = 0; i < fanOut; i++) {
+        addDir(
+            tree,
+            dir + "d" + i + "/",
+            depth - 1,
+            fanOut,
+            ownersPercent,
+            globsPerDir,
+            noParentPercent);
+      }
+    }
+  }
+
+  /** Returns count different files in random directories of tree, with names matched by globs. */
+  List<String> changedFiles(Tree tree, int count) {
+    Set<String> files = new HashSet<>();
+    while (files.size() < count) {
+      String dir = tree.dirs.get(random.nextInt(tree.dirs.size())).substring(2); // remove "./"
+      String name =
+          random.nextBoolean()
+              ? "f" + random.nextInt(100)
+              : "abc".charAt(random.nextInt(3)) + String.valueOf(random.nextInt(10));
+      files.add(dir + name + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+    }
+    return new ArrayList<>(files);
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of OwnersDb.findOwners and OwnerWeights.sortKeys for changed files in a generated
+ * directory tree. Run with "-prof gc" to also report bytes allocated per operation; see build.md.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class OwnersDbBenchmark {
+  /** Depth of directories below the root. */
+  @Param({"4"})
+  public int depth;
+
+  /** Number of subdirectories of each directory. */
+  @Param({"5"})
+  public int fanOut;
+
+  /** Number of per-file lines in each OWNERS file. */
+  @Param({"0", "3"})
+  public int globsPerDir;
+
+  /** Percentage of OWNERS files with "set noparent". */
+  @Param({"10"})
+  public int noParentPercent;
+
+  /** Number of changed files. */
+  @Param({"10", "1000", "10000", "100000"})
+  public int files;
+
+  private OwnersDb db;
+  private List<String> changedFiles;
+  private Map<String, OwnerWeights> ownerWeights;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    OwnersCorpus generator = new OwnersCorpus();
+    OwnersCorpus.Tree tree = generator.tree(depth, fanOut, globsPerDir, noParentPercent);
+    db = new OwnersDb(new Config(null, null), OwnersCorpus.PROJECT, OwnersCorpus.BRANCH, "OWNERS");
+    // Without accounts, every owner email is its own preferred email.
+    for (int i = 0; i < OwnersCorpus.NUM_EMAILS; i++) {
+      db.preferredEmails.put(OwnersCorpus.email(i), OwnersCorpus.email(i));
+    }
+    tree.ownersFiles.forEach(
+        (dir, content) ->
+            db.addFile(
+                null,
+                OwnersCorpus.PROJECT,
+                OwnersCorpus.BRANCH,
+                dir,
+                dir + "OWNERS",
+                content.split("\\R"),
+                Trace.NONE));
+    changedFiles = generator.changedFiles(tree, files);
+    // Like a cached OwnersDb, find owners once to index the effective owners of directories.
+    ownerWeights = db.findOwners(changedFiles).ownerWeights;
+  }
+
+  /** Finds owners of all changed files, as Action and Checker do for each request. */
+  @Benchmark
+  public Object findOwners() {
+    return db.findOwners(changedFiles);
+  }
+
+  /** Sorts owners of all changed files by their weights, as Action does for each request. */
+  @Benchmark
+  public Object sortKeys() {
+    return OwnerWeights.sortKeys(ownerWeights);
+  }
+}
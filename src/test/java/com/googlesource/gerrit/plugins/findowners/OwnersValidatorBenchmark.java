@@ -0,0 +1,235 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.account.Emails;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.events.CommitReceivedEvent;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of OwnersValidator for one pushed commit, in an in-memory repository. The commit changes the
+ * given number of files in a generated directory tree, and every OWNERS file of the tree, each with
+ * an include statement and a file: directive of files in the repository. Run with "-prof gc" to
+ * also report bytes allocated per push; see build.md.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class OwnersValidatorBenchmark {
+  private static final int INCLUDED_FILES = 20; // files in "common/" included by OWNERS files
+
+  /** Number of changed files in the pushed commit, without OWNERS files. */
+  @Param({"1000", "10000", "50000"})
+  public int files;
+
+  /** Depth of directories below the root; every directory could have an OWNERS file. */
+  @Param({"4"})
+  public int depth;
+
+  /** Number of subdirectories of each directory. */
+  @Param({"5"})
+  public int fanOut;
+
+  private Repository repo;
+  private RevWalk revWalk;
+  private CommitReceivedEvent event;
+  private OwnersValidator validator;
+  private BenchmarkEmails emails;
+  private final List<String[]> includes = new ArrayList<>(); // OWNERS path, line number, line
+  private OwnersValidator.Checker checker; // has checked the commit, and keeps its emails
+
+  private static class BenchmarkCommitReceivedEvent extends CommitReceivedEvent {
+    BenchmarkCommitReceivedEvent(String project, RevWalk revWalk, ObjectId commit)
+        throws IOException {
+      this.project = Project.builder(Project.nameKey(project)).build();
+      this.revWalk = revWalk;
+      this.commit = revWalk.parseCommit(commit);
+      this.refName = OwnersCorpus.BRANCH;
+    }
+  }
+
+  /** Every email is registered to exactly one account. */
+  private static class BenchmarkEmails extends Emails {
+    BenchmarkEmails() {
+      super(null, null);
+    }
+
+    @Override
+    public ImmutableSetMultimap<String, Account.Id> getAccountsFor(String... emails) {
+      ImmutableSetMultimap.Builder<String, Account.Id> builder = ImmutableSetMultimap.builder();
+      int id = 1000000;
+      for (String email : emails) {
+        builder.put(email, Account.id(++id));
+      }
+      return builder.build();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    InMemoryRepositoryManager repoManager = new InMemoryRepositoryManager();
+    repo = repoManager.createRepository(Project.nameKey(OwnersCorpus.PROJECT));
+    OwnersCorpus generator = new OwnersCorpus();
+    OwnersCorpus.Tree tree = generator.tree(depth, fanOut, 2, 10);
+    Map<String, String> oldFiles = new HashMap<>();
+    Map<String, String> newFiles = new HashMap<>();
+    for (int i = 0; i < INCLUDED_FILES; i++) {
+      oldFiles.put("common/OWNERS_" + i, generator.email() + '\n' + generator.email() + '\n');
+    }
+    int n = 0;
+    for (Map.Entry<String, String> entry : tree.ownersFiles.entrySet()) {
+      String path = entry.getKey().substring(2) + Config.OWNERS; // remove "./"
+      String content = entry.getValue();
+      int lines = content.split("\\R").length;
+      String include = "include /common/OWNERS_" + (n++ % INCLUDED_FILES);
+      String file = "per-file *.md = file: /common/OWNERS_" + (n % INCLUDED_FILES);
+      includes.add(new String[] {path, String.valueOf(lines + 1), include});
+      includes.add(new String[] {path, String.valueOf(lines + 2), file});
+      oldFiles.put(path, content);
+      newFiles.put(path, content + include + '\n' + file + '\n');
+    }
+    // Half of the files are changed, and half are not.
+    List<String> sourceFiles = generator.changedFiles(tree, 2 * files);
+    for (int i = 0; i < sourceFiles.size(); i++) {
+      String path = sourceFiles.get(i);
+      oldFiles.put(path, "// " + path + '\n');
+      newFiles.put(path, (i < files) ? "// " + path + " changed\n" : "// " + path + '\n');
+    }
+    for (Map.Entry<String, String> entry : oldFiles.entrySet()) {
+      newFiles.putIfAbsent(entry.getKey(), entry.getValue());
+    }
+    ObjectId pushed;
+    try (ObjectInserter inserter = repo.newObjectInserter()) {
+      ObjectId base = insertCommit(inserter, oldFiles, null);
+      pushed = insertCommit(inserter, newFiles, base);
+      inserter.flush();
+      RefUpdate update = repo.updateRef(Constants.R_HEADS + OwnersCorpus.BRANCH);
+      update.setNewObjectId(base);
+      update.forceUpdate();
+    }
+    revWalk = new RevWalk(repo);
+    event = new BenchmarkCommitReceivedEvent(OwnersCorpus.PROJECT, revWalk, pushed);
+    PluginConfig config = PluginConfig.create("", new org.eclipse.jgit.lib.Config(), null);
+    emails = new BenchmarkEmails();
+    validator = new OwnersValidator(config, null, repoManager, emails);
+    checker = validator.new Checker(event, false);
+    checker.check(Config.OWNERS);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    revWalk.close();
+    repo.close();
+  }
+
+  private static ObjectId insertCommit(
+      ObjectInserter inserter, Map<String, String> files, ObjectId parent) throws IOException {
+    DirCache dirCache = DirCache.newInCore();
+    DirCacheBuilder builder = dirCache.builder();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      DirCacheEntry entry = new DirCacheEntry(file.getKey());
+      entry.setFileMode(FileMode.REGULAR_FILE);
+      entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, file.getValue().getBytes(UTF_8)));
+      builder.add(entry);
+    }
+    builder.finish(); // sorts the entries
+    PersonIdent ident = new PersonIdent("Benchmark", "benchmark@g.com");
+    CommitBuilder commit = new CommitBuilder();
+    commit.setTreeId(dirCache.writeTree(inserter));
+    if (parent != null) {
+      commit.setParentId(parent);
+    }
+    commit.setAuthor(ident);
+    commit.setCommitter(ident);
+    commit.setMessage("generated " + files.size() + " files");
+    return inserter.insert(commit);
+  }
+
+  /** Finds changed files of the commit; the Checker constructor calls getChangedFiles. */
+  @Benchmark
+  public Object getChangedFiles() {
+    return validator.new Checker(event, false).allFiles;
+  }
+
+  /** Checks all changed OWNERS files, as onCommitReceived does for each pushed commit. */
+  @Benchmark
+  public Object check() throws IOException {
+    OwnersValidator.Checker checker = validator.new Checker(event, false);
+    checker.check(Config.OWNERS);
+    return checker.messages;
+  }
+
+  /** Checks the include and file: lines of changed OWNERS files, which read repository files. */
+  @Benchmark
+  public Object checkIncludes() {
+    checker.messages = new ArrayList<>();
+    checker.checkedFiles = new HashSet<>();
+    checker.readFiles = new HashMap<>();
+    for (String[] include : includes) {
+      checker.checkIncludeOrFile(
+          OwnersCorpus.PROJECT, include[0], Integer.parseInt(include[1]), include[2]);
+    }
+    return checker.messages;
+  }
+
+  /** Looks up accounts of all owner emails in the changed OWNERS files. */
+  @Benchmark
+  public Object checkEmails() {
+    checker.messages = new ArrayList<>();
+    checker.checkEmails(emails);
+    return checker.messages;
+  }
+}
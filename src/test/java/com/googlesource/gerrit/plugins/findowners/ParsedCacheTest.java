@@ -0,0 +1,93 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.flogger.FluentLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test ParsedCache class */
+@RunWith(JUnit4.class)
+public class ParsedCacheTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Parser.Result parse(String content) {
+    Parser parser = new Parser("P", "master", "OWNERS");
+    return parser.parseFile("./d1/", content);
+  }
+
+  @Test
+  public void memoryOnlyTest() throws Exception {
+    ParsedCache cache = new ParsedCache(10, "", 10);
+    Parser.Result result = parse("a@g\n");
+    assertThat(cache.get("k1")).isNull();
+    cache.put("k1", result);
+    assertThat(cache.get("k1")).isSameInstanceAs(result);
+    cache.invalidateAll();
+    assertThat(cache.get("k1")).isNull();
+  }
+
+  @Test
+  public void persistentTest() throws Exception {
+    String dir = folder.getRoot().getPath();
+    ParsedCache cache = new ParsedCache(10, dir, 10);
+    cache.put("k1", parse("a@g\nset noparent\nper-file *.c=b@g\n"));
+    cache.flush();
+    // A new cache, e.g. after a server restart, loads saved results.
+    ParsedCache cache2 = new ParsedCache(10, dir, 10);
+    // getIfPresent does not read the disk.
+    assertThat(cache2.getIfPresent("k1")).isNull();
+    Parser.Result result = cache2.get("k1");
+    assertThat(cache2.getIfPresent("k1")).isSameInstanceAs(result);
+    assertThat(result).isNotNull();
+    assertThat(result.stopLooking).isTrue();
+    assertThat(result.owner2paths).containsKey("a@g");
+    assertThat(result.owner2paths.get("b@g")).containsExactly("./d1/*.c");
+    assertThat(cache2.get("k2")).isNull();
+    // Saved results are still valid after invalidateAll.
+    cache2.invalidateAll();
+    assertThat(cache2.get("k1")).isNotNull();
+  }
+
+  @Test
+  public void maxSavedFilesTest() throws Exception {
+    String dir = folder.getRoot().getPath();
+    ParsedCache cache = new ParsedCache(10, dir, 2);
+    cache.put("k1", parse("a@g\n"));
+    cache.put("k2", parse("b@g\n"));
+    cache.put("k3", parse("c@g\n"));
+    cache.flush();
+    // The oldest saved file is removed.
+    ParsedCache cache2 = new ParsedCache(10, dir, 2);
+    assertThat(cache2.get("k1")).isNull();
+    assertThat(cache2.get("k2")).isNotNull();
+    assertThat(cache2.get("k3")).isNotNull();
+    // A smaller limit after a restart removes more old files.
+    ParsedCache cache3 = new ParsedCache(10, dir, 1);
+    cache3.flush();
+    ParsedCache cache4 = new ParsedCache(10, dir, 1);
+    cache4.flush();
+    assertThat(cache4.get("k1")).isNull();
+    // k2 and k3 could have the same modified time.
+    assertThat(cache4.get("k2") == null).isNotEqualTo(cache4.get("k3") == null);
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of Parser.parseFile and Parser.parseLine on synthetic OWNERS files. Run with "-prof
+ * gc" to also report allocation rate and bytes per operation; see build.md.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+  /** Corpus of OwnersCorpus: small, generated, perFile, commentHeavy, or includeChain. */
+  @Param({"small", "generated", "perFile", "commentHeavy", "includeChain"})
+  public String corpus;
+
+  /** Number of lines of generated, perFile and commentHeavy; depth of includeChain. */
+  @Param({"5000"})
+  public int size;
+
+  private OwnersCorpus.Files files;
+  private String[] lines;
+  private int next; // index of the next line parsed by parseLine
+  private Parser lineParser;
+  private Parser.Result lineResult;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    OwnersCorpus generator = new OwnersCorpus();
+    switch (corpus) {
+      case "small":
+        files = generator.small();
+        break;
+      case "generated":
+        files = generator.generated(size);
+        break;
+      case "perFile":
+        files = generator.perFile(size);
+        break;
+      case "commentHeavy":
+        files = generator.commentHeavy(size);
+        break;
+      case "includeChain":
+        // Java stack depth, not the benchmark, limits very long chains.
+        files = generator.includeChain(Math.min(size, 200));
+        break;
+      default:
+        throw new IllegalArgumentException("unknown corpus " + corpus);
+    }
+    lines = files.content.split("\\R");
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    // Included files are parsed once per Parser, so parseLine keeps one Parser per iteration.
+    lineParser = newParser();
+    lineResult = new Parser.Result();
+    next = 0;
+  }
+
+  private Parser newParser() {
+    return new Parser(
+        null, files.newReadFiles(), null, OwnersCorpus.PROJECT, OwnersCorpus.BRANCH, "d1/OWNERS");
+  }
+
+  /** Parses the whole file with a new Parser, as OwnersDb does on a cache miss. */
+  @Benchmark
+  public Object parseFile() {
+    return newParser().parseFile("./d1/", files.content);
+  }
+
+  /** Parses one line of the file, in order, into one Result. */
+  @Benchmark
+  public Object parseLine() {
+    int num = next;
+    next = (num + 1 == lines.length) ? 0 : num + 1;
+    lineParser.parseLine(lineResult, "./d1/", lines[num], num + 1);
+    return lineResult;
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.flogger.FluentLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test SlowLog class */
+@RunWith(JUnit4.class)
+public class SlowLogTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  @Test
+  public void formatTest() {
+    Trace trace = Trace.timesOnly();
+    trace.add(Trace.Counter.DIRS, 3);
+    trace.add(Trace.Counter.OWNERS_FILES, 2);
+    trace.add(Trace.Counter.OTHER_REPOS, 1);
+    Trace.PhaseTimer open = trace.time(Trace.Phase.REPO_OPEN);
+    trace.log("getRepoFile:", "P1:refs/heads/master:f1");
+    open.stop();
+    String line = SlowLog.format(SlowLog.BUILD, 6000, null, 12, trace);
+    assertThat(line)
+        .startsWith(
+            "Slow find-owners build millis=6000 files=12 from_cache=false"
+                + " dirs=3 owners_files=2 includes=0 included_files=0 other_repos=1"
+                + " bytes_read=0 emails=0 repo_opens=1 cache_lookup_millis=0");
+    assertThat(line).endsWith(" match_millis=0");
+  }
+
+  @Test
+  public void rateLimitPerOperationTest() {
+    List<String> lines = new ArrayList<>();
+    Handler handler =
+        new Handler() {
+          @Override
+          public void publish(LogRecord record) {
+            lines.add(getFormatter().formatMessage(record));
+          }
+
+          @Override
+          public void flush() {}
+
+          @Override
+          public void close() {}
+        };
+    handler.setFormatter(new SimpleFormatter());
+    Logger slowLogger = Logger.getLogger(SlowLog.class.getName());
+    slowLogger.addHandler(handler);
+    try {
+      Config config = new Config(null, null); // slowLogInterval is 60 seconds
+      long nanos = TimeUnit.SECONDS.toNanos(6);
+      SlowLog.logIfSlow(config, SlowLog.BUILD, 5000, nanos, null, 1, Trace.timesOnly());
+      // A slow approval within the interval is logged after a slow build.
+      SlowLog.logIfSlow(config, SlowLog.APPROVAL, 5000, nanos, null, 1, Trace.timesOnly());
+      // Another slow build within the interval is not logged.
+      SlowLog.logIfSlow(config, SlowLog.BUILD, 5000, nanos, null, 1, Trace.timesOnly());
+    } finally {
+      slowLogger.removeHandler(handler);
+    }
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0)).startsWith("Slow find-owners build millis=6000 ");
+    assertThat(lines.get(1)).startsWith("Slow find-owners approval millis=6000 ");
+  }
+}
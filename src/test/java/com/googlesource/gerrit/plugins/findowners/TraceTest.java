@@ -0,0 +1,124 @@
+// Copyright (C) 2020 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.findowners;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.flogger.FluentLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Test Trace class */
+@RunWith(JUnit4.class)
+public class TraceTest {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @Rule public Watcher watcher = new Watcher(logger);
+
+  @Test
+  public void enabledTraceTest() {
+    Trace trace = new Trace();
+    assertThat(trace.isEnabled()).isTrue();
+    trace.log("findOwners");
+    trace.log("checkFile:", "./d1/f1");
+    trace.log("getFile:", "d1/OWNERS", ":(...)");
+    trace.error("x@g");
+    assertThat(trace.getLogs())
+        .containsExactly("findOwners", "checkFile:./d1/f1", "getFile:d1/OWNERS:(...)")
+        .inOrder();
+    assertThat(trace.getErrors()).containsExactly("x@g");
+  }
+
+  @Test
+  public void noneTraceTest() {
+    assertThat(Trace.NONE.isEnabled()).isFalse();
+    Trace.NONE.log("findOwners");
+    Trace.NONE.log("checkFile:", "./d1/f1");
+    Trace.NONE.log("getFile:", "d1/OWNERS", ":(...)");
+    Trace.NONE.error("x@g");
+    assertThat(Trace.NONE.getLogs()).isEmpty();
+    assertThat(Trace.NONE.getErrors()).isEmpty();
+  }
+
+  @Test
+  public void phaseTimeTest() {
+    Trace trace = Trace.timesOnly();
+    assertThat(trace.isEnabled()).isFalse();
+    Trace.PhaseTimer parse = trace.time(Trace.Phase.PARSE);
+    Trace.PhaseTimer read1 = trace.time(Trace.Phase.FILE_READ);
+    trace.log("getFile:", "f1");
+    read1.stop();
+    Trace.PhaseTimer read2 = trace.time(Trace.Phase.FILE_READ);
+    trace.log("getFile:", "f2");
+    read2.stop();
+    parse.stop();
+    assertThat(trace.getLogs()).isEmpty();
+    assertThat(trace.getCount(Trace.Phase.PARSE)).isEqualTo(1);
+    assertThat(trace.getCount(Trace.Phase.FILE_READ)).isEqualTo(2);
+    assertThat(trace.getCount(Trace.Phase.MATCH)).isEqualTo(0);
+    assertThat(trace.getNanos(Trace.Phase.PARSE)).isGreaterThan(0L);
+    assertThat(trace.getNanos(Trace.Phase.FILE_READ)).isGreaterThan(0L);
+    assertThat(trace.getNanos(Trace.Phase.MATCH)).isEqualTo(0L);
+  }
+
+  @Test
+  public void nonePhaseTimeTest() {
+    Trace.PhaseTimer parse = Trace.NONE.time(Trace.Phase.PARSE);
+    Trace.NONE.log("parseLine:", "f1");
+    parse.stop();
+    assertThat(Trace.NONE.getCount(Trace.Phase.PARSE)).isEqualTo(0);
+    assertThat(Trace.NONE.getNanos(Trace.Phase.PARSE)).isEqualTo(0L);
+  }
+
+  @Test
+  public void traceViewTest() {
+    Trace trace = new Trace();
+    Trace timesView = trace.withoutLogs();
+    Trace logsView = trace.withoutTimes();
+    timesView.log("findOwners");
+    timesView.add(Trace.Counter.OWNERS_FILES, 1);
+    timesView.setFromCache();
+    logsView.log("checkFile:", "./d1/f1");
+    logsView.add(Trace.Counter.OWNERS_FILES, 1);
+    Trace.PhaseTimer match = logsView.time(Trace.Phase.MATCH);
+    logsView.addMatch(1, 100);
+    match.stop();
+    assertThat(trace.getLogs()).containsExactly("checkFile:./d1/f1");
+    assertThat(trace.getTotal(Trace.Counter.OWNERS_FILES)).isEqualTo(1);
+    assertThat(trace.getCount(Trace.Phase.MATCH)).isEqualTo(0);
+    assertThat(trace.getMatches()).isEmpty();
+    assertThat(trace.isFromCache()).isTrue();
+  }
+
+  @Test
+  public void newLogsViewTest() {
+    Trace trace = new Trace();
+    Trace sharedView = trace.withNewLogs();
+    sharedView.log("findOwnersFileIn:", "./d1");
+    sharedView.error("x@g");
+    sharedView.add(Trace.Counter.DIRS, 1);
+    // Times and counts are shared, messages are added to trace only by addLogs.
+    assertThat(trace.getLogs()).isEmpty();
+    assertThat(trace.getErrors()).isEmpty();
+    assertThat(trace.getTotal(Trace.Counter.DIRS)).isEqualTo(1);
+    trace.log("findOwners");
+    trace.addLogs(sharedView);
+    assertThat(trace.getLogs()).containsExactly("findOwners", "findOwnersFileIn:./d1").inOrder();
+    assertThat(trace.getErrors()).containsExactly("x@g");
+    Trace.NONE.addLogs(sharedView);
+    assertThat(Trace.NONE.getLogs()).isEmpty();
+  }
+}